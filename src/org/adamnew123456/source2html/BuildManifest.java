@@ -0,0 +1,346 @@
+package org.adamnew123456.source2html;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A BuildManifest records what a run rendered: for each source file, the
+ * hash, size and modification time of its code, and the page it produced.
+ * It is saved into the output directory, so that the next run can tell
+ * which sources haven't changed since and skip them.
+ *
+ * The manifest also records the settings which change how pages look,
+ * including the version of the renderer. A manifest with different 
+ * settings doesn't describe what this run would produce, so it is treated
+ * as if it were empty.
+ *
+ * The manifest is a text file. Its first line is a header with the format
+ * version and the settings, and each line after that is an entry. The
+ * fields on each line are separated by tabs.
+ */
+public class BuildManifest {
+    /**
+     * The name of the manifest file, inside of the output directory.
+     */
+    public static final String FILE_NAME = ".source2html-manifest";
+    
+    private static final String HEADER = "#source2html-manifest\t1";
+    
+    /**
+     * What the manifest knows about a single source file.
+     */
+    public static class Entry {
+        private final String source;
+        private final String hash;
+        private final long size;
+        private final long modified;
+        private final String packageName;
+        private final String name;
+        private final String output;
+        
+        public Entry(String source, String hash, long size, long modified,
+                String packageName, String name, String output) {
+            this.source = source;
+            this.hash = hash;
+            this.size = size;
+            this.modified = modified;
+            this.packageName = packageName;
+            this.name = name;
+            this.output = output;
+        }
+        
+        /**
+         * Returns the path of the source, relative to the input directory.
+         */
+        public String getSource() {
+            return source;
+        }
+        
+        /**
+         * Returns the SHA-256 hash of the source's bytes, in hex.
+         */
+        public String getHash() {
+            return hash;
+        }
+        
+        /**
+         * Returns the size of the source, in bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+        
+        /**
+         * Returns when the source was last modified, in milliseconds since
+         * the epoch.
+         */
+        public long getModified() {
+            return modified;
+        }
+        
+        /**
+         * Returns the name of the package the source is in.
+         */
+        public String getPackageName() {
+            return packageName;
+        }
+        
+        /**
+         * Returns the name of the source, as it appears in the package list.
+         */
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * Returns the path of the page rendered from the source, relative to
+         * the output directory.
+         */
+        public String getOutput() {
+            return output;
+        }
+        
+        /**
+         * Returns a copy of this entry, for the same code at a different
+         * size or modification time.
+         */
+        public Entry withStat(long size, long modified) {
+            return new Entry(source, hash, size, modified, packageName, name, output);
+        }
+        
+        /**
+         * Whether the entry is for a source with the given size and
+         * modification time.
+         */
+        public boolean hasStat(long size, long modified) {
+            return this.size == size && this.modified == modified;
+        }
+        
+        /**
+         * Whether this entry would put the same thing into the package list
+         * as the other.
+         */
+        boolean isListedSameAs(Entry other) {
+            return source.equals(other.source)
+                    && packageName.equals(other.packageName)
+                    && name.equals(other.name);
+        }
+        
+        /**
+         * Renders this entry as a line of the manifest. The source goes last,
+         * so that it is the only field which can't be split on tabs.
+         */
+        String toLine() {
+            return String.join("\t", hash, Long.toString(size),
+                    Long.toString(modified), packageName, name, output, source);
+        }
+        
+        /**
+         * Reads an entry back from a line of the manifest.
+         */
+        static Entry fromLine(String line) {
+            String[] fields = line.split("\t", 7);
+            if (fields.length != 7) {
+                throw new IllegalArgumentException("Bad manifest entry: " + line);
+            }
+            
+            return new Entry(fields[6], fields[0], Long.parseLong(fields[1]),
+                    Long.parseLong(fields[2]), fields[3], fields[4], fields[5]);
+        }
+    }
+    
+    private final String settings;
+    
+    // Entries are kept in order of their sources, so that the manifest (and
+    // anything listed from it) comes out the same on every run
+    private final ConcurrentSkipListMap<String, Entry> entries =
+            new ConcurrentSkipListMap<>();
+    
+    /**
+     * Creates an empty manifest, for a run with the given settings.
+     */
+    public BuildManifest(String settings) {
+        if (settings.indexOf('\n') != -1) {
+            throw new IllegalArgumentException("Settings can't span lines: " + settings);
+        }
+        
+        this.settings = settings;
+    }
+    
+    /**
+     * Loads the manifest from the output directory. If there isn't one, or
+     * it was saved with different settings, or it can't be read, this
+     * returns an empty manifest instead. A manifest which can't be read is
+     * reported, and moved aside so that it is only reported once.
+     */
+    public static BuildManifest load(File outDir, String settings) {
+        BuildManifest manifest = new BuildManifest(settings);
+        Path file = new File(outDir, FILE_NAME).toPath();
+        
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!manifest.header().equals(reader.readLine())) {
+                return manifest;
+            }
+            
+            String line;
+            while ((line = reader.readLine()) != null) {
+                manifest.put(Entry.fromLine(line));
+            }
+        } catch (NoSuchFileException err) {
+            return manifest;
+        } catch (IOException | IllegalArgumentException err) {
+            System.err.println("Could not read manifest " + file
+                    + ", rendering everything: " + err.toString());
+            setAside(file);
+            return new BuildManifest(settings);
+        }
+        
+        return manifest;
+    }
+    
+    /**
+     * Moves a manifest which can't be read out of the way, so that the runs
+     * after this one don't all complain about it. It is kept alongside, in
+     * case anybody wants to see what was wrong with it.
+     */
+    private static void setAside(Path file) {
+        Path corrupt = file.resolveSibling(FILE_NAME + ".corrupt");
+        try {
+            Files.move(file, corrupt, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException err) {
+            System.err.println("Could not move manifest " + file 
+                    + " to " + corrupt + ": " + err.toString());
+        }
+    }
+    
+    /**
+     * Saves the manifest into the output directory. It is written to the
+     * side and then moved into place, so that a run which dies halfway
+     * through doesn't leave half a manifest behind.
+     */
+    public void save(File outDir) throws IOException {
+        Path file = new File(outDir, FILE_NAME).toPath();
+        Path temp = new File(outDir, FILE_NAME + ".tmp").toPath();
+        
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(header());
+            writer.write("\n");
+            for (Entry entry: entries.values()) {
+                writer.write(entry.toLine());
+                writer.write("\n");
+            }
+        }
+        
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private String header() {
+        return HEADER + "\t" + settings;
+    }
+    
+    /**
+     * Returns the entry for the source at the given path (relative to the
+     * input directory), or null if there isn't one.
+     */
+    public Entry get(String source) {
+        return entries.get(source);
+    }
+    
+    /**
+     * Adds an entry, replacing any entry for the same source. This can be
+     * called from several threads at once.
+     */
+    public void put(Entry entry) {
+        entries.put(entry.getSource(), entry);
+    }
+    
+    /**
+     * Returns all the entries, in order of their sources.
+     */
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+    
+    /**
+     * Returns the entries in this manifest whose sources aren't in the
+     * other manifest.
+     */
+    public List<Entry> entriesMissingFrom(BuildManifest other) {
+        List<Entry> missing = new ArrayList<>();
+        for (Entry entry: entries.values()) {
+            if (!other.entries.containsKey(entry.getSource())) {
+                missing.add(entry);
+            }
+        }
+        
+        return missing;
+    }
+    
+    /**
+     * Whether both manifests would produce the same package list: they have
+     * the same sources, in the same packages, under the same names.
+     */
+    public boolean hasSameListing(BuildManifest other) {
+        if (!Objects.equals(settings, other.settings)
+                || entries.size() != other.entries.size()) {
+            return false;
+        }
+        
+        for (Entry entry: entries.values()) {
+            Entry otherEntry = other.entries.get(entry.getSource());
+            if (otherEntry == null || !entry.isListedSameAs(otherEntry)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Groups the names of the sources by their packages, in order of their
+     * sources, getting the Packages from the given registry.
+     */
+    public Map<Package, List<String>> getPackageFiles(PackageRegistry registry) {
+        Map<Package, List<String>> packageFiles = new LinkedHashMap<>();
+        for (Entry entry: entries.values()) {
+            Package pkg = registry.fromPackageName(entry.getPackageName());
+            packageFiles.computeIfAbsent(pkg, key -> new ArrayList<>())
+                .add(entry.getName());
+        }
+        
+        return packageFiles;
+    }
+    
+    /**
+     * Returns the SHA-256 hash of the bytes, in hex. The buffer itself isn't
+     * moved.
+     */
+    public static String hash(ByteBuffer bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes.duplicate());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException err) {
+            // Every JVM has to support SHA-256
+            throw new IllegalStateException(err);
+        }
+    }
+}
@@ -5,16 +5,141 @@ import org.adamnew123456.source2html.render.RenderSourceFile;
 import org.adamnew123456.source2html.render.RenderFrame;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
 
 /**
  * This is responsible for generating all the Package and JavaFile objects,
  * and then rendering them all to the output directory.
  */
 public class CodeProcessor {
+    /**
+     * How the pipeline does its file I/O.
+     */
+    public enum IOMode {
+        /**
+         * Files are read on a pool with one thread per worker, and pages are
+         * streamed out by the workers which render them. This uses the 
+         * least memory.
+         */
+        POOLED,
+        
+        /**
+         * Every read and write runs on a thread of its own, while lexing and
+         * rendering stay on the worker pool. Pages are rendered into memory
+         * and written afterwards, so that slow writes don't hold up the
+         * workers. This suits filesystems where each open or write has a
+         * high latency, like network mounts.
+         * 
+         * Virtual threads are used where the JVM has them. Otherwise, there
+         * is a pool with a platform thread for each file that can be in the
+         * pipeline at once.
+         */
+        PER_FILE,
+    }
+    
+    /*
+     * These globs decide which files under the input directory are read,
+     * and which directories are skipped - see SourceWalker.
+     */
+    private List<String> includes = SourceWalker.DEFAULT_INCLUDES;
+    private List<String> excludes = SourceWalker.DEFAULT_EXCLUDES;
+    
+    // The source files are decoded with this, whatever the host's locale is
+    private Charset charset = JavaFile.DEFAULT_CHARSET;
+    
+    // The pages are always written in this
+    private static final Charset OUTPUT_CHARSET = StandardCharsets.UTF_8;
+    
+    // How many threads each stage of the pipeline gets
+    private int workers = Runtime.getRuntime().availableProcessors();
+    
+    // How many files each worker can have in the pipeline at once, before
+    // the walker has to wait for some of them to get through
+    private static final int IN_FLIGHT_PER_WORKER = 4;
+    
+    // When each file gets its own I/O thread, more files have to be in the
+    // pipeline at once to keep the I/O busy. This limits how many rendered
+    // pages can be waiting to be written.
+    private static final int PER_FILE_IN_FLIGHT = 256;
+    
+    private IOMode ioMode = IOMode.POOLED;
+    
+    /**
+     * The version of the pages that the renderers produce. This has to be 
+     * bumped whenever a change to the renderers (or the page around them)
+     * changes the output, so that incremental runs don't keep the pages
+     * which older versions rendered.
+     */
+    public static final int RENDER_VERSION = 1;
+    
+    // Whether unchanged files are skipped, going by the last run's manifest
+    private boolean incremental = false;
+    
+    /**
+     * Sets the globs which pick out the source files to render.
+     */
+    public void setIncludes(List<String> includes) {
+        this.includes = includes;
+    }
+    
+    /**
+     * Sets the globs which pick out the files and directories to skip.
+     */
+    public void setExcludes(List<String> excludes) {
+        this.excludes = excludes;
+    }
+    
+    /**
+     * Sets the charset which the source files are decoded with.
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+    
+    /**
+     * Sets how many threads each stage of the rendering pipeline uses.
+     */
+    public void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Need at least one worker, not " + workers);
+        }
+        
+        this.workers = workers;
+    }
+    
+    /**
+     * Sets how the rendering pipeline reads and writes files.
+     */
+    public void setIOMode(IOMode ioMode) {
+        this.ioMode = ioMode;
+    }
+    
+    /**
+     * Sets whether files which haven't changed since the last run into the
+     * same output directory are skipped.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+    
     /**
      * Takes all the Java source code in the given input directory, and writes
      * HTML versions into the output directory.
@@ -24,22 +149,62 @@ public class CodeProcessor {
      * is being served.
      */
     public void run(File inDir, File outDir, String linkPrefix) {
-        List<JavaFile> javaSource = readSourceFiles(inDir);
-        List<Package> packages = Package.getPackages();
+        // Each run has its own packages, so that running more than once 
+        // doesn't mix up their package lists
+        PackageRegistry registry = new PackageRegistry();
+        
+        // The manifest is always saved, but only an incremental run trusts 
+        // the one left by the last run - and only if it was made by the same
+        // version of the renderers, with the same settings
+        String settings = "render=" + RENDER_VERSION 
+                + "\tcharset=" + charset.name() + "\tprefix=" + linkPrefix;
+        BuildManifest previous = incremental 
+                ? BuildManifest.load(outDir, settings) 
+                : new BuildManifest(settings);
+        BuildManifest current = new BuildManifest(settings);
+        
+        renderSourceFiles(inDir, outDir, registry, previous, current);
+        if (incremental) {
+            removeStaleOutputs(outDir, previous, current);
+        }
         
-        RenderPackageList pkgList = new RenderPackageList(packages, javaSource, linkPrefix);
-        renderIndexPage(outDir, pkgList);
+        File indexFile = new File(outDir, "index.html");
+        if (!incremental || !current.hasSameListing(previous) || !indexFile.isFile()) {
+            RenderPackageList pkgList = 
+                    new RenderPackageList(current.getPackageFiles(registry), linkPrefix);
+            renderIndexPage(outDir, pkgList);
+        }
         
-        // Populate the tree with package directories, so we have somewhere to
-        // put the files
-        for (Package pkg: packages) {
-            File packageDir = new File(outDir, pkg.getName());
-            packageDir.mkdir();
+        try {
+            current.save(outDir);
+        } catch (IOException err) {
+            System.err.println("Could not save manifest in " + outDir.getPath()
+                    + ": " + err.toString());
+        }
+    }
+    
+    /**
+     * Deletes the pages which were rendered by the last run, but which this
+     * run didn't render, either because their sources are gone or because
+     * their packages changed. A package's directory is deleted along with 
+     * its last page.
+     */
+    private void removeStaleOutputs(File outDir, BuildManifest previous, 
+            BuildManifest current) {
+        Set<String> outputs = new HashSet<>();
+        for (BuildManifest.Entry entry: current.getEntries()) {
+            outputs.add(entry.getOutput());
         }
         
-        for (JavaFile file: javaSource) {
-            RenderSourceFile renderFile = new RenderSourceFile(file);
-            renderSourceFile(outDir, file, renderFile);
+        for (BuildManifest.Entry entry: previous.getEntries()) {
+            if (outputs.contains(entry.getOutput())) continue;
+            
+            File page = new File(outDir, entry.getOutput());
+            page.delete();
+            
+            // This only works if the directory is empty, which is just what
+            // we want
+            page.getParentFile().delete();
         }
     }
     
@@ -51,17 +216,7 @@ public class CodeProcessor {
                 
         File indexFile = new File(outDir, "index.html");
         try {
-            indexFile.createNewFile();
-            
-            FileWriter writer = new FileWriter(indexFile);
-            writer.write("<html><head>"
-                    + "<title>Code</title>"
-                    + "<script>" + frame.toJavascript() + "</script>"
-                    + "<style>" + frame.toCSS() + "</style>"
-                    + "</head>"
-                    + "<body>" + frame.toHTML() + "</body>"
-                    + "</html>");
-            writer.close();
+            writePage(indexFile, "Code", frame);
         } catch (IOException err) {
             System.err.println("Could not create index " + indexFile.getPath());
         }
@@ -72,48 +227,257 @@ public class CodeProcessor {
      * HTML files which can be displayed on their own, their primary purpose is
      * to be visible using the frame page.
      */
-    private void renderSourceFile(File outDir, JavaFile file, RenderSourceFile source) {
-        File packageDir = new File(outDir, file.getPackage().getName());
-        File sourceFile = new File(packageDir, file.getName() + ".html");
-        
+    private boolean renderSourceFile(File outDir, RenderSourceFile source) {
+        JavaFile file = source.getSourceFile();
         try {
-            sourceFile.createNewFile();
-            
-            FileWriter writer = new FileWriter(sourceFile);
-            writer.write("<html><head>"
-                    + "<title>" + file.getName() + ".java </title>"
-                    + "<script>" + source.toJavascript() + "</script>"
-                    + "<style>" + source.toCSS() + "</style>"
-                    + "</head>"
-                    + "<body>" + source.toHTML() + "</body>"
-                    + "</html>");
-            writer.close();
+            writePage(pageFile(outDir, file), file.getName() + ".java ", source);
+            return true;
         } catch (IOException err) {
             System.err.println("Could not create file " + file.getName() 
                     + " in package " + file.getPackage().getName());
+            return false;
         }
     }
     
     /**
-     * Recursively gathers all the Java source code files in the given directory
+     * Renders a single source file's page into memory, encoded and ready to
+     * be written out with writeSourceFile.
      */
-    private List<JavaFile> readSourceFiles(File inDir) {
-        List<JavaFile> files = new LinkedList<>();
-        File[] children = inDir.listFiles();
-        for (File child: children) {
-            if (child.isDirectory()) {
-                files.addAll(readSourceFiles(child));
-            } else if (child.isFile() && child.getName().endsWith(".java")) {
-                try {
-                    JavaFile sourceFile = new JavaFile(child);
-                    files.add(sourceFile);
-                } catch (IOException err) {
-                    System.err.println("Could not access file " 
-                            + child.getPath() + ": " + err.toString());
+    private byte[] renderPage(RenderSourceFile source) {
+        JavaFile file = source.getSourceFile();
+        String page = Renderable.render(
+                out -> writePage(out, file.getName() + ".java ", source));
+        return page.getBytes(OUTPUT_CHARSET);
+    }
+    
+    /**
+     * Writes out a source file's page, which has already been rendered.
+     */
+    private boolean writeSourceFile(File outDir, JavaFile file, byte[] page) {
+        try {
+            Files.write(pageFile(outDir, file).toPath(), page);
+            return true;
+        } catch (IOException err) {
+            System.err.println("Could not create file " + file.getName() 
+                    + " in package " + file.getPackage().getName());
+            return false;
+        }
+    }
+    
+    /**
+     * Returns where the page for the given file goes, making sure that its
+     * package's directory exists.
+     */
+    private File pageFile(File outDir, JavaFile file) {
+        File packageDir = new File(outDir, file.getPackage().getName());
+        
+        // Several files might need the same package directory at once, 
+        // and it's fine if another one made it first
+        packageDir.mkdirs();
+        return new File(packageDir, file.getName() + ".html");
+    }
+    
+    /**
+     * Writes a complete HTML page, with the given title, holding whatever is
+     * rendered. The rendering is streamed straight into the file, in UTF-8.
+     */
+    private void writePage(File file, String title, Renderable content) 
+            throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), OUTPUT_CHARSET)) {
+            writePage(writer, title, content);
+        }
+    }
+    
+    /**
+     * Writes a complete HTML page, with the given title, onto the output.
+     */
+    private void writePage(Appendable out, String title, Renderable content) 
+            throws IOException {
+        out.append("<html><head><title>");
+        out.append(title);
+        out.append("</title><script>");
+        content.writeJavascript(out);
+        out.append("</script><style>");
+        content.writeCSS(out);
+        out.append("</style></head><body>");
+        content.writeHTML(out);
+        out.append("</body></html>");
+    }
+    
+    /**
+     * A source file on its way through the pipeline.
+     */
+    private static class SourceJob {
+        final Path path;
+        JavaFile file;
+        BuildManifest.Entry entry;
+        RenderSourceFile renderFile;
+        byte[] page;
+        
+        SourceJob(Path path) {
+            this.path = path;
+        }
+    }
+    
+    /**
+     * Reads, lexes and renders all the Java source code files in the given
+     * directory, and records each file that gets a page into the current
+     * manifest. Files whose entries in the previous manifest show they haven't
+     * changed are skipped, and their entries carried over.
+     * 
+     * This is a pipeline, where each file goes through these stages:
+     * 
+     * - It is found by the walker, which blocks once too many files are 
+     *   already in the pipeline, so that a big tree isn't all read in at once.
+     * - It is checked against the previous manifest, and read and decoded if
+     *   it has changed, on the I/O pool.
+     * - It is lexed on the rendering pool.
+     * - It is rendered on the rendering pool. When the I/O mode is POOLED,
+     *   it is streamed to its page as it is rendered. Otherwise, it is 
+     *   rendered into memory and then written on the I/O pool.
+     * 
+     * Different files can be in different stages at the same time. Each
+     * file's page only depends on that file, so the output is the same no
+     * matter how many workers there are or what order they finish in.
+     */
+    private void renderSourceFiles(File inDir, File outDir, PackageRegistry registry,
+            BuildManifest previous, BuildManifest current) {
+        Queue<CompletableFuture<Void>> pending = new ConcurrentLinkedQueue<>();
+        
+        ForkJoinPool walkPool = new ForkJoinPool(workers);
+        ExecutorService renderPool = Executors.newFixedThreadPool(workers);
+        ExecutorService ioPool;
+        Semaphore inFlight;
+        if (ioMode == IOMode.POOLED) {
+            ioPool = Executors.newFixedThreadPool(workers);
+            inFlight = new Semaphore(workers * IN_FLIGHT_PER_WORKER);
+        } else {
+            ioPool = newPerTaskExecutor();
+            inFlight = new Semaphore(PER_FILE_IN_FLIGHT);
+        }
+        
+        try {
+            Path root = inDir.toPath();
+            SourceWalker walker = new SourceWalker(root, includes, excludes);
+            walker.walk(walkPool, path -> {
+                inFlight.acquireUninterruptibly();
+                
+                CompletableFuture<SourceJob> lexed = CompletableFuture
+                    .supplyAsync(() -> readChangedFile(new SourceJob(path), root, 
+                            outDir, registry, previous, current), ioPool)
+                    .thenApplyAsync(job -> {
+                        if (job == null) return null;
+                        
+                        job.renderFile = new RenderSourceFile(job.file);
+                        job.renderFile.lex();
+                        return job;
+                    }, renderPool);
+                
+                CompletableFuture<Void> written;
+                if (ioMode == IOMode.POOLED) {
+                    written = lexed.thenAcceptAsync(job -> {
+                        if (job == null) return;
+                        if (renderSourceFile(outDir, job.renderFile)) {
+                            current.put(job.entry);
+                        }
+                    }, renderPool);
+                } else {
+                    written = lexed
+                        .thenApplyAsync(job -> {
+                            if (job == null) return null;
+                            job.page = renderPage(job.renderFile);
+                            return job;
+                        }, renderPool)
+                        .thenAcceptAsync(job -> {
+                            if (job == null) return;
+                            if (writeSourceFile(outDir, job.file, job.page)) {
+                                current.put(job.entry);
+                            }
+                        }, ioPool);
                 }
+                
+                pending.add(written.whenComplete((result, err) -> {
+                    inFlight.release();
+                    if (err != null) {
+                        System.err.println("Could not render file " 
+                                + path + ": " + err.toString());
+                    }
+                }));
+            });
+            
+            for (CompletableFuture<Void> stages: pending) {
+                stages.exceptionally(err -> null).join();
             }
+        } finally {
+            walkPool.shutdown();
+            ioPool.shutdown();
+            renderPool.shutdown();
         }
+    }
+    
+    /**
+     * Reads a single source file, unless the previous manifest shows that its
+     * page is already up to date. Returns the job with its file and its new
+     * manifest entry filled in, or null if the file was skipped or can't be
+     * read.
+     * 
+     * A file whose size and modification time haven't changed isn't read at
+     * all. Otherwise, it is read and hashed, and it is only decoded if its
+     * hash has changed too.
+     */
+    private SourceJob readChangedFile(SourceJob job, Path root, File outDir, 
+            PackageRegistry registry, BuildManifest previous, BuildManifest current) {
+        String source = root.relativize(job.path).toString().replace(File.separatorChar, '/');
         
-        return files;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(job.path, BasicFileAttributes.class);
+            long size = attrs.size();
+            long modified = attrs.lastModifiedTime().toMillis();
+            
+            BuildManifest.Entry old = previous.get(source);
+            boolean hasPage = old != null && new File(outDir, old.getOutput()).isFile();
+            if (hasPage && old.hasStat(size, modified)) {
+                current.put(old);
+                return null;
+            }
+            
+            ByteBuffer bytes = JavaFile.readBytes(job.path);
+            String hash = BuildManifest.hash(bytes);
+            if (hasPage && old.getHash().equals(hash)) {
+                current.put(old.withStat(size, modified));
+                return null;
+            }
+            
+            job.file = new JavaFile(bytes, job.path.getFileName().toString(), 
+                    charset, registry);
+            
+            String packageName = job.file.getPackage().getName();
+            String name = job.file.getName();
+            job.entry = new BuildManifest.Entry(source, hash, size, modified, 
+                    packageName, name, packageName + "/" + name + ".html");
+            return job;
+        } catch (IOException err) {
+            System.err.println("Could not access file " 
+                    + job.path + ": " + err.toString());
+            return null;
+        }
+    }
+    
+    /**
+     * Creates an executor which runs each task on a thread of its own. On a
+     * JVM with virtual threads (Java 21 and later), those are used. 
+     * 
+     * Older JVMs get a fixed pool, with a thread for each file that can be in
+     * the pipeline at once. A file's read and write never run at the same 
+     * time, so no task ever has to wait for a thread - but the pool can't
+     * grow past that, even if the limit on files in flight is lifted.
+     */
+    private static ExecutorService newPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)factory.invoke(null);
+        } catch (ReflectiveOperationException err) {
+            return Executors.newFixedThreadPool(PER_FILE_IN_FLIGHT);
+        }
     }
 }
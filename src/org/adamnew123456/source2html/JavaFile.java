@@ -1,14 +1,21 @@
 package org.adamnew123456.source2html;
+import org.adamnew123456.source2html.syntax.PackageScanner;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
-import java.util.List;
-import java.util.LinkedList;
-import java.util.regex.*;
+import java.util.Arrays;
 
 /**
  * A JavaFile is a Java source code file; this stores both the source code itself,
@@ -16,67 +23,288 @@ import java.util.regex.*;
  */
 public class JavaFile {
     private String name;
-    private List<String> sourceLines;
     private Package thePackage;
     
     /*
-     * This should work in most cases. It won't work if:
-     * 
-     * - The package declaration is split over multiple lines.
-     * - There is a package declaration in a block comment, which
-     *   lacks the typical leading column of stars.
-     * 
-     * Those shouldn't happen in non-weird code.
+     * The code is kept once, as a single String, with line endings turned
+     * into plain newlines. (Strings which are all Latin-1 only take a byte 
+     * for each character.) Lines are found through the offsets where they 
+     * start, so that no line has to be stored on its own.
+     */
+    private String source;
+    private int[] lineStarts;
+    private int lineCount;
+    
+    // How much of the reader to take at once
+    private static final int READ_SIZE = 8192;
+    
+    // Files at least this big are mapped into memory, instead of being read
+    // into a buffer
+    private static final long MAP_SIZE = 1024 * 1024;
+    
+    /**
+     * The charset used when none is given.
+     */
+    public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+    
+    /**
+     * Reads the code out of the reader, and registers its package in the
+     * given registry. Files which are read with the same registry share their
+     * Packages.
      */
-    private static final Pattern packageRegex = 
-        Pattern.compile("^\\s*package\\s*([a-zA-Z0-9_]+([.][a-zA-Z0-9_]+)*)\\s*;", 
-                Pattern.MULTILINE);
+    public JavaFile(Reader reader, String name, PackageRegistry registry) 
+            throws IOException {
+        this(readAll(reader), name, registry);
+    }
     
-    public JavaFile(Reader reader, String name) throws IOException {
+    /**
+     * This is the most useful constructor, which consumes a File directly, 
+     * instead of a Reader. The file is decoded as UTF-8.
+     */
+    public JavaFile(File input, PackageRegistry registry) throws IOException {
+        this(input.toPath(), DEFAULT_CHARSET, registry);
+    }
+    
+    /**
+     * Reads the file at the given path, decoding it with the given charset,
+     * and registers its package in the given registry. If the file isn't 
+     * valid in that charset, this fails with an IOException which says where
+     * the bad input is.
+     */
+    public JavaFile(Path input, Charset charset, PackageRegistry registry) 
+            throws IOException {
+        this(readBytes(input), input.getFileName().toString(), charset, registry);
+    }
+    
+    /**
+     * Decodes code which has already been read, as by readBytes, with the
+     * given charset.
+     */
+    public JavaFile(ByteBuffer bytes, String name, Charset charset, 
+            PackageRegistry registry) throws IOException {
+        this(decode(bytes, charset), name, registry);
+    }
+    
+    private JavaFile(CharSequence code, String name, PackageRegistry registry) {
         this.name = name;
-        sourceLines = new LinkedList<>();
+        setSource(code);
         
         // Figure out what package we belong to, so that this can be placed
-        // in the proper output directory when rendered
-        BufferedReader sourceReader = new BufferedReader(reader);
-        sourceReader.lines().forEach(line -> {
-            sourceLines.add(line);
+        // in the proper output directory when rendered. Only the header of
+        // the code is lexed to find it.
+        thePackage = toPackage(registry, PackageScanner.findPackage(source));
+        thePackage.addFile(source.length());
+    }
+    
+    /**
+     * Gets the Package with the given name, where null means the default 
+     * package.
+     */
+    private static Package toPackage(PackageRegistry registry, String packageName) {
+        if (packageName == null) {
+            return registry.fromPackageName("default");
+        } else {
+            return registry.fromPackageName(packageName);
+        }
+    }
+    
+    /**
+     * Reads everything out of the reader, and closes it.
+     */
+    private static CharSequence readAll(Reader reader) throws IOException {
+        try {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[READ_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, read);
+            }
             
-            Matcher matcher = packageRegex.matcher(line);
-            if (matcher.find() && thePackage == null) {
-                String packageName = matcher.group(1);
-                thePackage = Package.fromPackageName(packageName);
+            return text;
+        } finally {
+            reader.close();
+        }
+    }
+    
+    /**
+     * Reads the whole file in one go. Big files are mapped into memory
+     * instead of being copied.
+     */
+    public static ByteBuffer readBytes(Path input) throws IOException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_SIZE) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                ByteBuffer bytes = ByteBuffer.allocate((int)size);
+                while (bytes.hasRemaining() && channel.read(bytes) != -1);
+                bytes.flip();
+                return bytes;
             }
-        });
+        }
+    }
+    
+    /**
+     * Decodes the bytes with the given charset.
+     * 
+     * Most source files are pure ASCII, which every common charset decodes
+     * the same way. Those are turned straight into a String, without going
+     * through a decoder.
+     */
+    private static CharSequence decode(ByteBuffer bytes, Charset charset) throws IOException {
+        // Decoding moves the buffer along, which the caller shouldn't see
+        ByteBuffer input = bytes.duplicate();
+        if (input.hasArray() && isAsciiCompatible(charset) && isAscii(input)) {
+            return new String(input.array(), input.arrayOffset() + input.position(), 
+                    input.remaining(), StandardCharsets.ISO_8859_1);
+        }
         
-        if (thePackage == null) {
-            thePackage = Package.fromPackageName("default");
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        try {
+            return decoder.decode(input);
+        } catch (CharacterCodingException err) {
+            throw new IOException(
+                    String.format("Not valid %s at byte %d", 
+                            charset.name(), input.position()), 
+                    err);
+        }
+    }
+    
+    /**
+     * Whether ASCII text means the same thing in the given charset.
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+    
+    /**
+     * Whether every byte in the buffer is ASCII.
+     */
+    private static boolean isAscii(ByteBuffer bytes) {
+        byte[] array = bytes.array();
+        int end = bytes.arrayOffset() + bytes.limit();
+        for (int i = bytes.arrayOffset() + bytes.position(); i < end; i++) {
+            if (array[i] < 0) {
+                return false;
+            }
         }
         
-        sourceReader.close();
-        reader.close();
+        return true;
     }
     
     /**
-     * This is the most useful constructor, which consumes a File directly, 
-     * instead of a Reader.
+     * Stores the code, and finds where its lines start. Lines may end with 
+     * "\n", "\r\n" or "\r", but they are all stored as "\n", and the last 
+     * line ending in the file is dropped - this is the same as joining the 
+     * lines of a BufferedReader with "\n".
+     */
+    private void setSource(CharSequence code) {
+        if (!hasReturns(code)) {
+            // The code is already in the form it gets stored in, so it only
+            // has to be copied once (at most)
+            int end = code.length();
+            if (end > 0 && code.charAt(end - 1) == '\n') {
+                end--;
+            }
+            
+            source = code.subSequence(0, end).toString();
+            findLineStarts(code.length() > 0);
+            return;
+        }
+        
+        StringBuilder text = new StringBuilder(code.length());
+        boolean afterReturn = false;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == '\n' && afterReturn) {
+                // The second half of a "\r\n", which already ended the line
+                afterReturn = false;
+                continue;
+            }
+            
+            afterReturn = c == '\r';
+            text.append(afterReturn ? '\n' : c);
+        }
+        
+        if (text.length() > 0 && text.charAt(text.length() - 1) == '\n') {
+            text.setLength(text.length() - 1);
+        }
+        
+        source = text.toString();
+        findLineStarts(true);
+    }
+    
+    /**
+     * Whether the code has any carriage returns in it.
+     */
+    private static boolean hasReturns(CharSequence code) {
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) == '\r') {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Finds where each line of the source starts. Since the last line ending
+     * has been dropped from the source, an empty source may still have had a 
+     * single (empty) line in it.
      */
-    public JavaFile(File input) throws IOException {
-        this(new FileReader(input), input.getName());
+    private void findLineStarts(boolean hasLines) {
+        int[] starts = new int[64];
+        int lines = 0;
+        if (hasLines) {
+            starts[lines++] = 0;
+        }
+        
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                if (lines == starts.length) {
+                    starts = Arrays.copyOf(starts, lines * 2);
+                }
+                
+                starts[lines++] = i + 1;
+            }
+        }
+        
+        lineStarts = starts;
+        lineCount = lines;
     }
     
     /**
-     * Returns the code in this file.
+     * Returns the code in this file. This is the same String every time, so
+     * there's no cost to calling this more than once.
      */
     public String getSource() {
-        return String.join("\n", sourceLines);
+        return source;
+    }
+    
+    /**
+     * Returns the code on the given line, without its line ending. This is a
+     * view of the file's code, and doesn't copy it.
+     */
+    public CharSequence getLine(int line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Line %d outside of file of %d lines", 
+                            line, lineCount));
+        }
+        
+        int end = line + 1 < lineCount ? lineStarts[line + 1] - 1 : source.length();
+        return CharBuffer.wrap(source, lineStarts[line], end);
     }
     
     /**
      * Returns the number of lines of code in this file.
      */
     public int getLineCount() {
-        return sourceLines.size();
+        return lineCount;
     }
     
     /**
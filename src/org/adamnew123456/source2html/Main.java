@@ -1,21 +1,78 @@
 package org.adamnew123456.source2html;
 
 import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
     static void usage() {
-        System.err.println("Usage: <package> <output> [link-prefix]");
+        System.err.println("Usage: [options] <package> <output> [link-prefix]");
+        System.err.println("Options:");
+        System.err.println("  --include=<glob>   Only render files matching the glob (repeatable)");
+        System.err.println("  --exclude=<glob>   Skip files and directories matching the glob (repeatable),");
+        System.err.println("                     on top of build/ and target/");
+        System.err.println("  --charset=<name>   Decode source files with this charset (default UTF-8)");
+        System.err.println("  --workers=<count>  Threads for each stage of rendering (default: one per CPU)");
+        System.err.println("  --io=<mode>        pooled (default), or per-file for a thread per read and write");
+        System.err.println("  --incremental      Skip files which haven't changed since the last run");
         System.exit(1);
     }
     
     public static void main(String[] args) {
         try {
-            String input = args[0];
-            String output = args[1];
+            List<String> includes = new ArrayList<>();
+            List<String> excludes = new ArrayList<>(SourceWalker.DEFAULT_EXCLUDES);
+            List<String> positional = new ArrayList<>();
+            Charset charset = JavaFile.DEFAULT_CHARSET;
+            int workers = Runtime.getRuntime().availableProcessors();
+            CodeProcessor.IOMode ioMode = CodeProcessor.IOMode.POOLED;
+            boolean incremental = false;
+            
+            for (String arg: args) {
+                if (arg.startsWith("--include=")) {
+                    includes.add(arg.substring("--include=".length()));
+                } else if (arg.startsWith("--exclude=")) {
+                    excludes.add(arg.substring("--exclude=".length()));
+                } else if (arg.startsWith("--charset=")) {
+                    String charsetName = arg.substring("--charset=".length());
+                    try {
+                        charset = Charset.forName(charsetName);
+                    } catch (IllegalArgumentException exn) {
+                        System.err.println("Unknown charset " + charsetName);
+                        usage();
+                    }
+                } else if (arg.startsWith("--workers=")) {
+                    try {
+                        workers = Integer.parseInt(arg.substring("--workers=".length()));
+                    } catch (NumberFormatException exn) {
+                        workers = 0;
+                    }
+                    
+                    if (workers < 1) {
+                        System.err.println("Bad worker count in " + arg);
+                        usage();
+                    }
+                } else if (arg.equals("--io=pooled")) {
+                    ioMode = CodeProcessor.IOMode.POOLED;
+                } else if (arg.equals("--io=per-file")) {
+                    ioMode = CodeProcessor.IOMode.PER_FILE;
+                } else if (arg.equals("--incremental")) {
+                    incremental = true;
+                } else if (arg.startsWith("--")) {
+                    System.err.println("Unknown option " + arg);
+                    usage();
+                } else {
+                    positional.add(arg);
+                }
+            }
+            
+            String input = positional.get(0);
+            String output = positional.get(1);
             String prefix;
 
-            if (args.length >= 3) {
-                prefix = args[2];
+            if (positional.size() >= 3) {
+                prefix = positional.get(2);
             } else {
                 prefix = "/";
             }
@@ -35,10 +92,19 @@ public class Main {
             }
             
             CodeProcessor formatter = new CodeProcessor();
+            if (!includes.isEmpty()) {
+                formatter.setIncludes(includes);
+            }
+            
+            formatter.setExcludes(excludes);
+            formatter.setCharset(charset);
+            formatter.setWorkers(workers);
+            formatter.setIOMode(ioMode);
+            formatter.setIncremental(incremental);
             formatter.run(inDir, outDir, prefix);
             
             System.exit(0);
-        } catch (ArrayIndexOutOfBoundsException exn) {
+        } catch (IndexOutOfBoundsException exn) {
             usage();
         }
     }
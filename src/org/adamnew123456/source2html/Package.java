@@ -1,30 +1,25 @@
 package org.adamnew123456.source2html;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A Package is an object which refers to a particular Java package. Note that
- * Package objects are re-used, which is why there is no public constructor.
+ * Package objects are re-used, which is why there is no public constructor -
+ * they come from a PackageRegistry.
  */
 public class Package {
+    private final String name;
+    
     /*
-     * Re-using Packages gives us a couple of nice properties:
-     * 
-     * - We can easily account for all Packages, which becomes important when
-     *   building the packages' link trees.
-     * - Packages can be compared via reference, since equal packages are the
-     *   same object
-     * - Packages will always be reused, avoiding the need to have many little
-     *   Package objects floating around everywhere.
+     * These count up the files which have been loaded into this package, and
+     * how much code they have. Files can be loaded on several threads at
+     * once, so these are atomic.
      */
-    private static Map<String, Package> packageCache = new HashMap<>();
-    private final String name;
+    private final AtomicInteger fileCount = new AtomicInteger();
+    private final AtomicLong sourceSize = new AtomicLong();
     
-    private Package(String name) {
+    Package(String name) {
         this.name = name;
     }
     
@@ -36,27 +31,26 @@ public class Package {
     }
     
     /*
-     * Factory method: generates a Package from a package name, reusing a
-     * pre-existing Package if possible.
+     * Counts a file, with the given number of characters of code, as part of
+     * this package.
+     */
+    void addFile(long size) {
+        fileCount.incrementAndGet();
+        sourceSize.addAndGet(size);
+    }
+    
+    /*
+     * Returns how many files have been loaded into this package.
      */
-    public static Package fromPackageName(String name) {
-        if (!packageCache.containsKey(name)) {
-            Package pkg = new Package(name);
-            packageCache.put(name, pkg);
-        }
-        
-        return packageCache.get(name);
+    public int getFileCount() {
+        return fileCount.get();
     }
     
     /*
-     * Returns all the packages registered so far.
+     * Returns the total number of characters of code in this package's
+     * files.
      */
-    public static List<Package> getPackages() {
-        List<Package> packages = new ArrayList<>(packageCache.size());
-        for (Package value: packageCache.values()) {
-            packages.add(value);
-        }
-        
-        return packages;
+    public long getSourceSize() {
+        return sourceSize.get();
     }
 }
@@ -0,0 +1,43 @@
+package org.adamnew123456.source2html;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A PackageRegistry keeps track of the Packages seen during a single run,
+ * so that each package name has exactly one Package object. 
+ * 
+ * Re-using Packages gives us a couple of nice properties:
+ * 
+ * - We can easily account for all Packages, which becomes important when
+ *   building the packages' link trees.
+ * - Packages can be compared via reference, since equal packages are the
+ *   same object
+ * - Packages will always be reused, avoiding the need to have many little
+ *   Package objects floating around everywhere.
+ * 
+ * Registries are safe to use from several threads at once. Each run should
+ * get a registry of its own, so that one run's packages don't show up in
+ * the next.
+ */
+public class PackageRegistry {
+    private final ConcurrentMap<String, Package> packages = new ConcurrentHashMap<>();
+    
+    /**
+     * Gets the Package with the given name, creating it if this registry
+     * hasn't seen it yet. Every call with the same name gets the same
+     * Package, even if they happen at the same time.
+     */
+    public Package fromPackageName(String name) {
+        return packages.computeIfAbsent(name, Package::new);
+    }
+    
+    /**
+     * Returns all the packages registered so far.
+     */
+    public List<Package> getPackages() {
+        return new ArrayList<>(packages.values());
+    }
+}
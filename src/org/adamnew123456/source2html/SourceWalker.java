@@ -0,0 +1,190 @@
+package org.adamnew123456.source2html;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * A SourceWalker finds all the source files under a directory. Each
+ * directory is listed by its own fork/join task, so that a tree with many
+ * directories (or a slow filesystem) is listed by several threads at once.
+ *
+ * Files are handed off as soon as they are found, rather than after the
+ * whole walk is over. Since they come from different threads, they don't
+ * come in any particular order, and the consumer has to be thread-safe.
+ *
+ * Which files are found is decided by glob patterns (in the syntax of
+ * FileSystem.getPathMatcher), which are matched against each path relative
+ * to the root directory:
+ *
+ * - A file is found if it matches any of the includes, and none of the
+ *   excludes.
+ * - A directory is never entered if it matches any of the excludes.
+ */
+public class SourceWalker {
+    /**
+     * By default, every Java file is included.
+     */
+    public static final List<String> DEFAULT_INCLUDES =
+            Arrays.asList("**.java");
+    
+    /**
+     * By default, the output of Gradle, Maven and Ant builds isn't walked,
+     * wherever in the tree it is.
+     */
+    public static final List<String> DEFAULT_EXCLUDES =
+            Arrays.asList("{build,target}", "**/{build,target}");
+    
+    private final Path root;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    
+    public SourceWalker(Path root) {
+        this(root, DEFAULT_INCLUDES, DEFAULT_EXCLUDES);
+    }
+    
+    /**
+     * Creates a walker over the given root, which finds the files matching
+     * the given include and exclude globs.
+     */
+    public SourceWalker(Path root, List<String> includes, List<String> excludes) {
+        this.root = root;
+        this.includes = toMatchers(root.getFileSystem(), includes);
+        this.excludes = toMatchers(root.getFileSystem(), excludes);
+    }
+    
+    /**
+     * Compiles each of the globs into a PathMatcher.
+     */
+    private static List<PathMatcher> toMatchers(FileSystem fs, List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>(globs.size());
+        for (String glob: globs) {
+            matchers.add(fs.getPathMatcher("glob:" + glob));
+        }
+        
+        return matchers;
+    }
+    
+    /**
+     * Whether any of the matchers match the given relative path.
+     */
+    private static boolean anyMatch(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher: matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Whether the file at the given path should be found.
+     */
+    boolean isIncluded(Path file) {
+        Path relative = root.relativize(file);
+        return anyMatch(includes, relative) && !anyMatch(excludes, relative);
+    }
+    
+    /**
+     * Whether the directory at the given path should be walked.
+     */
+    boolean isWalked(Path dir) {
+        return dir.equals(root) || !anyMatch(excludes, root.relativize(dir));
+    }
+    
+    /**
+     * Walks the whole tree on the common fork/join pool, passing each file
+     * to the consumer as it is found. This returns after every file has been
+     * passed along.
+     *
+     * Directories which can't be listed are reported and skipped, like
+     * unreadable files are.
+     */
+    public void walk(Consumer<Path> consumer) {
+        walk(ForkJoinPool.commonPool(), consumer);
+    }
+    
+    /**
+     * Like walk(Consumer), but walks the tree on the given pool.
+     */
+    public void walk(ForkJoinPool pool, Consumer<Path> consumer) {
+        pool.invoke(new WalkTask(root, consumer));
+    }
+    
+    /**
+     * Finds all the files in the tree, and returns them in sorted order.
+     */
+    public List<Path> findAll() {
+        List<Path> found = new ArrayList<>();
+        walk(path -> {
+            synchronized (found) {
+                found.add(path);
+            }
+        });
+        
+        found.sort(null);
+        return found;
+    }
+    
+    /**
+     * Lists a single directory, and forks off a task for each directory
+     * inside of it.
+     */
+    private class WalkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final Path dir;
+        private final Consumer<Path> consumer;
+        
+        WalkTask(Path dir, Consumer<Path> consumer) {
+            this.dir = dir;
+            this.consumer = consumer;
+        }
+        
+        @Override
+        protected void compute() {
+            List<WalkTask> subtasks = new ArrayList<>();
+            
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                for (Path child: children) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                    } catch (IOException err) {
+                        System.err.println("Could not access file "
+                                + child + ": " + err.toString());
+                        continue;
+                    }
+                    
+                    if (attrs.isDirectory()) {
+                        if (isWalked(child)) {
+                            WalkTask task = new WalkTask(child, consumer);
+                            task.fork();
+                            subtasks.add(task);
+                        }
+                    } else if (attrs.isRegularFile() && isIncluded(child)) {
+                        consumer.accept(child);
+                    }
+                }
+            } catch (IOException err) {
+                System.err.println("Could not list directory "
+                        + dir + ": " + err.toString());
+            }
+            
+            for (WalkTask task: subtasks) {
+                task.join();
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.adamnew123456.source2html.render;
 
+import java.io.IOException;
+
 /*
  * Utilities which relate to generating HTML, including:
  * 
@@ -10,9 +12,19 @@ class HTMLUtils {
      * Escapes &, <, >, ' and " into their respective HTML entities.
      */
     public static String escapeHTML(String text) {
-        StringBuilder builder = new StringBuilder();
-        text.chars().forEach(character -> {
-            switch ((char)character) {
+        return Renderable.render(out -> escapeHTML(text, 0, text.length(), out));
+    }
+    
+    /*
+     * Escapes the given range of the text, and writes it onto the end of the
+     * builder.
+     */
+    public static void escapeHTML(CharSequence text, int start, int length, 
+            Appendable builder) throws IOException {
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            char character = text.charAt(i);
+            switch (character) {
             case '&':
                 builder.append("&amp;");
                 break;
@@ -29,10 +41,8 @@ class HTMLUtils {
                 builder.append("&quot;");
                 break;
             default:
-                builder.append((char)character);
+                builder.append(character);
             }
-        });
-        
-        return builder.toString();
+        }
     }
 }
@@ -2,13 +2,13 @@ package org.adamnew123456.source2html.render;
 import org.adamnew123456.source2html.JavaFile;
 import org.adamnew123456.source2html.Package;
 
+import java.io.IOException;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.stringtemplate.v4.ST;
 import org.cougaar.NaturalOrderComparator;
 
 /**
@@ -32,62 +32,65 @@ import org.cougaar.NaturalOrderComparator;
  */
 public class RenderPackageList implements Renderable {
     /**
-     * Maps each package to the list of files which belong to that package.
+     * Maps each package to the names of the files which belong to that 
+     * package. This is filled in by the constructor and never changed 
+     * afterwards, so the list can be rendered from any thread.
      */
-    Map<Package, List<JavaFile>> packageFiles;
+    private final Map<Package, List<String>> packageFiles;
     
     // Links to source code always start with this
-    private String linkPrefix;
+    private final String linkPrefix;
     
-    /*
-     * These generate the relevant HTML for declaring the package list, and the
-     * file list for each package.
-     * 
-     * Yes, writing HTML and JS inline are bad. Java, lacking multi-line 
-     * strings, adds insult to injury by making hunks of inline text more 
-     * ugly than necessary.
+    /**
+     * Creates a package list out of files which have already been loaded.
+     * Every one of the packages is listed, even if none of the files are in
+     * it.
      */
-    private static ST packageTemplate = new ST(
-        "<div class=\"packageEntry\">"
-        + "<input type=\"button\" value=\"+\" id=\"package-{pkgName}\" "
-        +   "onclick=\"toggleExpand('files-{pkgName}')\"></input>"
-        +  "<span class=\"packageName\"> {pkgName} </span>"
-        +  "<div class=\"packageFiles\" style=\"display: none\" id=\"files-{pkgName}\">"
-        +   "{pkgFiles} "
-        +  "</div>"
-        + "</div>", 
-        '{', '}');
-    
-    private static ST fileTemplate = new ST(
-        "<a class=\"fileName\" onclick=\"loadCode('{prefix}{pkgName}/{fileName}.html')\">"
-        + "{fileName}.java"
-        + "</a><br/>",
-        '{', '}'
-        );
-    
     public RenderPackageList(List<Package> packages, List<JavaFile> files, 
             String prefix) {
+        this(groupFileNames(packages, files), prefix);
+    }
+    
+    /**
+     * Creates a package list out of the names of the files in each package.
+     * Only the names are needed, so the files themselves don't have to have
+     * been loaded.
+     */
+    public RenderPackageList(Map<Package, List<String>> fileNames, String prefix) {
         linkPrefix = prefix;
         packageFiles = new HashMap<>();
+        for (Map.Entry<Package, List<String>> entry: fileNames.entrySet()) {
+            packageFiles.put(entry.getKey(), new LinkedList<String>(entry.getValue()));
+        }
+    }
+    
+    /**
+     * Maps each of the packages onto the names of the files in it. The files
+     * might have been read after the package list was taken, so they may
+     * bring in packages of their own.
+     */
+    private static Map<Package, List<String>> groupFileNames(List<Package> packages, 
+            List<JavaFile> files) {
+        Map<Package, List<String>> fileNames = new HashMap<>();
         for (Package pkg: packages) {
-            packageFiles.put(pkg, new LinkedList<JavaFile>());
+            fileNames.put(pkg, new LinkedList<String>());
         }
         
         for (JavaFile file: files) {
-            Package pkg = file.getPackage();
-            packageFiles.get(pkg).add(file);
+            fileNames.computeIfAbsent(file.getPackage(), key -> new LinkedList<String>())
+                .add(file.getName());
         }
+        
+        return fileNames;
     }
     
     /**
-     * Creates HTML which represents the list of packages. It is meant to be
+     * Writes HTML which represents the list of packages. It is meant to be
      * embedded into a page which contains the main source file somehow, such as
      * inside of a <div>.
      */
     @Override
-    public String toHTML() {
-        StringBuilder builder = new StringBuilder();
-        
+    public void writeHTML(Appendable out) throws IOException {
         // I want the packages to appear in a sane order inside the listing
         List<Package> sortedPkgs = new LinkedList<>();
         sortedPkgs.addAll(packageFiles.keySet());
@@ -99,49 +102,51 @@ public class RenderPackageList implements Renderable {
             return cmp.compare(pkg1.getName(), pkg2.getName());
         });
      
-        // Generate the link groups for each package
+        // Generate the link groups for each package. Yes, writing HTML and JS
+        // inline are bad.
         for (Package pkg: sortedPkgs) {
-            StringBuilder fileParts = new StringBuilder();
+            String pkgName = pkg.getName();
+            out.append("<div class=\"packageEntry\">")
+                .append("<input type=\"button\" value=\"+\" id=\"package-").append(pkgName)
+                .append("\" onclick=\"toggleExpand('files-").append(pkgName).append("')\"></input>")
+                .append("<span class=\"packageName\"> ").append(pkgName).append(" </span>")
+                .append("<div class=\"packageFiles\" style=\"display: none\" id=\"files-")
+                .append(pkgName).append("\">");
             
-            for (JavaFile file: packageFiles.get(pkg)) {
-                ST fileSub = new ST(fileTemplate);
-                fileSub.add("fileName", file.getName());
-                fileSub.add("pkgName", pkg.getName());
-                fileSub.add("prefix", linkPrefix);
-                
-                fileParts.append(fileSub.render());
+            for (String fileName: packageFiles.get(pkg)) {
+                out.append("<a class=\"fileName\" onclick=\"loadCode('")
+                    .append(linkPrefix).append(pkgName).append("/")
+                    .append(fileName).append(".html')\">")
+                    .append(fileName).append(".java")
+                    .append("</a><br/>");
             }
             
-            ST packageSub = new ST(packageTemplate);
-            packageSub.add("pkgName", pkg.getName());
-            packageSub.add("pkgFiles", fileParts.toString());
-            builder.append(packageSub.render());
+            out.append(" </div>")
+                .append("</div>");
         }
-        
-        return builder.toString();
     }
     
     /**
-     * Creates CSS which provides default styles for the classes used in toHTML.
+     * Writes CSS which provides default styles for the classes used in toHTML.
      */
     @Override
-    public String toCSS() {
-        return ".packageEntry { padding: 5px ; color: black }\n" +
-               ".packageName  { font-weight: bold ; color: blue }\n";
+    public void writeCSS(Appendable out) throws IOException {
+        out.append(".packageEntry { padding: 5px ; color: black }\n" +
+                   ".packageName  { font-weight: bold ; color: blue }\n");
     }
     
     /**
-     * Creates Javascript which is used to expand/contract package listings.
+     * Writes Javascript which is used to expand/contract package listings.
      */
     @Override
-    public String toJavascript() {
-        return "function toggleExpand(elemID) {"
+    public void writeJavascript(Appendable out) throws IOException {
+        out.append("function toggleExpand(elemID) {"
                 +   "var element = document.getElementById(elemID);"
                 +   "if (element.style.display == \"none\") {"
                 +     "element.style.display = \"block\";"
                 +   "} else {"
                 +     "element.style.display = \"none\";"
                 +   "}"
-                + "}";
+                + "}");
     }
 }
@@ -4,6 +4,10 @@ import org.adamnew123456.source2html.syntax.*;
 
 import org.stringtemplate.v4.ST;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This class is responsible for rendering a page containing source code, 
  * along with line numbers and a pacakge list.
@@ -12,16 +16,13 @@ public class RenderSourceFile implements Renderable {
     private JavaFile sourceFile;
     
     /*
-     * These generates the HTML for the page as a whole, and each line of code.
+     * The tokens are kept after the page is rendered, and once the code has
+     * been updated so is the rendered code of each line, so that an edit 
+     * only has to redo the lines it touches.
      */
-    private static ST fileTemplate = new ST(
-        "<pre class=\"code\">{codeLines}</pre>",
-        '{', '}');
-    
-    private static ST lineTemplate = new ST(
-        "<span class=\"lineNumber\">{lineNumber}</span>"
-        + "{codeLine}",
-        '{', '}');
+    private IncrementalLexer lexer;
+    private List<String> codeLines;
+    private int lineCount;
     
     private static ST cssTemplate = new ST(
         " body { background: black; color: black }\n"
@@ -36,75 +37,163 @@ public class RenderSourceFile implements Renderable {
         sourceFile = code;
     }
     
+    /**
+     * Writes the page for the code. Each line is rendered and written out
+     * on its own, so only one line's worth of HTML is held onto at a time.
+     */
     @Override
-    public String toHTML() {
+    public void writeHTML(Appendable out) throws IOException {
         System.out.println("[RENDER] " + sourceFile.getPackage().getName() + "/" + sourceFile.getName());
         
+        lex();
+        writePage(out);
+    }
+    
+    /**
+     * Lexes the code, if that hasn't been done already. This happens on its
+     * own when the page is first written, but it can be done ahead of time.
+     */
+    public void lex() {
+        if (lexer == null) {
+            lexer = new IncrementalLexer(sourceFile.getSource());
+            lineCount = sourceFile.getLineCount();
+        }
+    }
+    
+    /**
+     * Returns the file whose code is being rendered.
+     */
+    public JavaFile getSourceFile() {
+        return sourceFile;
+    }
+    
+    /**
+     * Replaces the code with an edited version of it, and returns the HTML
+     * for the edited code. Only the lines around the edit are lexed and
+     * rendered again - the rest of the lines are reused from the last time
+     * the page was rendered.
+     */
+    public String update(String newSource) {
+        if (lexer == null) {
+            lexer = new IncrementalLexer(newSource);
+            codeLines = renderLines(0, lexer.getTokens().getLineCount());
+        } else {
+            if (codeLines == null) {
+                // The page was written out without keeping its lines, so
+                // they have to be rendered once before they can be reused
+                codeLines = renderLines(0, lexer.getTokens().getLineCount());
+            }
+            
+            IncrementalLexer.Change change = lexer.update(newSource);
+            List<String> replaced = 
+                    codeLines.subList(change.getFirstLine(), change.getOldEndLine());
+            replaced.clear();
+            replaced.addAll(renderLines(change.getFirstLine(), change.getNewEndLine()));
+        }
+        
+        // The source doesn't have a token line for the empty line after a
+        // trailing newline, but it is still numbered
+        boolean hasEmptyLastLine = newSource.isEmpty() 
+                || newSource.charAt(newSource.length() - 1) == '\n';
+        lineCount = lexer.getTokens().getLineCount() + (hasEmptyLastLine ? 1 : 0);
+        
+        return toPage();
+    }
+    
+    /**
+     * Renders the code on each of the lines from first up to end, without
+     * their line numbers.
+     */
+    private List<String> renderLines(int first, int end) {
+        List<String> lines = new ArrayList<>(end - first);
+        for (int line = first; line < end; line++) {
+            final int current = line;
+            lines.add(Renderable.render(out -> renderLine(current, out)));
+        }
+        
+        return lines;
+    }
+    
+    /**
+     * Renders the code on a single line, without its line number.
+     */
+    private void renderLine(int line, Appendable lineBuffer) throws IOException {
+        PackedTokens tokens = lexer.getTokens();
+        CharSequence source = tokens.getSource();
+        
+        for (int i = tokens.getLineStart(line); i < tokens.getLineEnd(line); i++) {
+            switch (tokens.getType(i)) {
+            case CHARACTER:
+                lineBuffer.append("<span class=\"code-character\">");
+                break;
+            case COMMENT:
+                lineBuffer.append("<span class=\"code-comment\">");
+                break;
+            case KEYWORD:
+                lineBuffer.append("<span class=\"code-keyword\">");
+                break;
+            case STRING:
+                lineBuffer.append("<span class=\"code-string\">");
+                break;
+            case RAW:
+                lineBuffer.append("<span class=\"code-raw\">");
+                break;
+            }
+            
+            HTMLUtils.escapeHTML(source, tokens.getStart(i), 
+                    tokens.getLength(i), lineBuffer);
+            lineBuffer.append("</span>");
+        }
+    }
+    
+    /**
+     * Returns the page, as writePage would write it.
+     */
+    private String toPage() {
+        return Renderable.render(this::writePage);
+    }
+    
+    /**
+     * Writes the rendered lines out as a page, along with their line
+     * numbers. The lines are reused if they've been kept from an update, 
+     * and are rendered as they're written otherwise.
+     */
+    private void writePage(Appendable out) throws IOException {
         // Figure out how much to offset the line number by, to keep them all
         // aligned as a single column
-        int alignAmount = (int)Math.ceil(Math.log10(sourceFile.getLineCount()));
+        int alignAmount = (int)Math.ceil(Math.log10(lineCount));
         String formatString = "%" + alignAmount + "d";
         
         // Render each line, along with their appropriate line numbers
-        StringBuilder codeLines = new StringBuilder("\n");
-        JavaLexer lexer = new JavaLexer(sourceFile.getSource());
+        out.append("<pre class=\"code\">\n");
         
-        for (int lineNumber = 1; lexer.hasNext(); lineNumber++) {
-            String lineNumberStr = String.format(formatString, lineNumber);
-            StringBuilder lineBuffer = new StringBuilder();
-
-            boolean isEndOfLine = false;
-            for (Token token: lexer) {
-                if (token.getChunk().endsWith("\n")) {
-                    isEndOfLine = true;
-                }
-                
-                switch (token.getTokenType()) {
-                case CHARACTER:
-                    lineBuffer.append("<span class=\"code-character\">");
-                    break;
-                case COMMENT:
-                    lineBuffer.append("<span class=\"code-comment\">");
-                    break;
-                case KEYWORD:
-                    lineBuffer.append("<span class=\"code-keyword\">");
-                    break;
-                case STRING:
-                    lineBuffer.append("<span class=\"code-string\">");
-                    break;
-                case RAW:
-                    lineBuffer.append("<span class=\"code-raw\">");
-                    break;
-                }
-                
-                lineBuffer.append(HTMLUtils.escapeHTML(token.getChunk()));
-                lineBuffer.append("</span>");
-                
-                if (isEndOfLine) {
-                    break;
-                }
+        StringBuilder lineBuffer = new StringBuilder();
+        int lines = lexer.getTokens().getLineCount();
+        for (int line = 0; line < lines; line++) {
+            lineBuffer.setLength(0);
+            lineBuffer.append("<span class=\"lineNumber\">")
+                .append(String.format(formatString, line + 1))
+                .append("</span>");
+            
+            if (codeLines != null) {
+                lineBuffer.append(codeLines.get(line));
+            } else {
+                renderLine(line, lineBuffer);
             }
-                
-            ST formatLine = new ST(lineTemplate);
-            formatLine.add("lineNumber", lineNumberStr);
-            formatLine.add("codeLine", lineBuffer.toString());
-            codeLines.append(formatLine.render());
+            
+            out.append(lineBuffer);
         }
         
-        ST formatPage = new ST(fileTemplate);
-        formatPage.add("fileName", sourceFile.getName());
-        formatPage.add("codeLines", codeLines.toString());
-        return formatPage.render();
+        out.append("</pre>");
     }
-
+    
     @Override
-    public String toCSS() {
+    public void writeCSS(Appendable out) throws IOException {
         ST formatCSS = new ST(cssTemplate);
-        return formatCSS.render();
+        out.append(formatCSS.render());
     }
 
     @Override
-    public String toJavascript() {
-        return "";
+    public void writeJavascript(Appendable out) throws IOException {
     }
 }
@@ -1,16 +1,59 @@
 package org.adamnew123456.source2html.render;
 
+import java.io.IOException;
+
 /*
  * A thing which can be rendered, specifically into HTML, CSS and Javascript.
- * 
+ *
  * - HTML renderings can be created by using toHTML, which returns an HTML
  *   string.
  * - CSS renderings can be created by toCSS, which returns a CSS string.
  * - Javascript renderings can be created by toJavascript, which returns a
  *   Javascript string.
+ *
+ * Each rendering can also be written straight into an Appendable (such as
+ * a Writer) with writeHTML, writeCSS and writeJavascript, which is what
+ * implementations provide. This avoids ever having the whole rendering in
+ * memory at once.
  */
 public interface Renderable {
-    String toHTML();
-    String toCSS();
-    String toJavascript();
+    void writeHTML(Appendable out) throws IOException;
+    void writeCSS(Appendable out) throws IOException;
+    void writeJavascript(Appendable out) throws IOException;
+
+    default String toHTML() {
+        return render(this::writeHTML);
+    }
+    
+    default String toCSS() {
+        return render(this::writeCSS);
+    }
+    
+    default String toJavascript() {
+        return render(this::writeJavascript);
+    }
+    
+    /**
+     * Something which writes its output into an Appendable.
+     */
+    @FunctionalInterface
+    interface Fragment {
+        void writeTo(Appendable out) throws IOException;
+    }
+    
+    /**
+     * Writes the fragment into a StringBuilder, and returns what it wrote.
+     * StringBuilders never throw IOExceptions, so there's no need for the
+     * caller to handle one.
+     */
+    static String render(Fragment fragment) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            fragment.writeTo(builder);
+        } catch (IOException err) {
+            throw new IllegalStateException("StringBuilder can't fail", err);
+        }
+        
+        return builder.toString();
+    }
 }
@@ -0,0 +1,240 @@
+package org.adamnew123456.source2html.syntax;
+
+/**
+ * An IncrementalLexer holds onto the tokens of a source, so that when the
+ * source is edited, only the lines around the edit have to be lexed again.
+ * 
+ * Lexing a line only depends on the state the lexer is in at its start, and
+ * the code from there onwards. So, after an edit, the lines are lexed again
+ * from just before the edit, until the lexer gets past the edit and reaches
+ * the start of a line in the same state as it was before. Everything after
+ * that line is the same as it was, aside from being moved over.
+ * 
+ * "Just before the edit" needs some care, since a block comment decides
+ * where it ends by looking ahead. If the edited line starts inside a block
+ * comment, then the lexer starts from the line where the comment began. If
+ * there's a block comment opener which never gets closed anywhere before the
+ * end of the edit, the lexer starts from its line too, since the edit might
+ * close it.
+ */
+public class IncrementalLexer {
+    /**
+     * Describes which lines an edit changed: the lines from the first line
+     * up to the old end line were replaced by the lines from the first line
+     * up to the new end line.
+     */
+    public static class Change {
+        private final int firstLine;
+        private final int oldEndLine;
+        private final int newEndLine;
+        
+        Change(int firstLine, int oldEndLine, int newEndLine) {
+            this.firstLine = firstLine;
+            this.oldEndLine = oldEndLine;
+            this.newEndLine = newEndLine;
+        }
+        
+        public int getFirstLine() {
+            return firstLine;
+        }
+        
+        public int getOldEndLine() {
+            return oldEndLine;
+        }
+        
+        public int getNewEndLine() {
+            return newEndLine;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("Change[%d: %d -> %d]", firstLine, oldEndLine, newEndLine);
+        }
+    }
+    
+    private String source;
+    private PackedTokens tokens;
+    
+    // Where the first block comment opener that never gets closed is, or -1
+    // if there isn't one
+    private int firstUnclosed;
+    
+    public IncrementalLexer(String source) {
+        this.source = source;
+        tokens = ParallelLexer.lexAll(source);
+        firstUnclosed = findUnclosed(tokens, 0);
+    }
+    
+    /**
+     * Returns the current source.
+     */
+    public String getSource() {
+        return source;
+    }
+    
+    /**
+     * Returns the tokens of the current source.
+     */
+    public PackedTokens getTokens() {
+        return tokens;
+    }
+    
+    /**
+     * Replaces the source with an edited version of it, and returns which
+     * lines of tokens changed.
+     */
+    public Change update(String newSource) {
+        int oldLength = source.length();
+        int newLength = newSource.length();
+        int lineCount = tokens.getLineCount();
+        
+        // Only the part between the common prefix and common suffix changed
+        int shortest = Math.min(oldLength, newLength);
+        int prefix = 0;
+        while (prefix < shortest && source.charAt(prefix) == newSource.charAt(prefix)) {
+            prefix++;
+        }
+        
+        int suffix = 0;
+        while (suffix < shortest - prefix 
+                && source.charAt(oldLength - suffix - 1) 
+                    == newSource.charAt(newLength - suffix - 1)) {
+            suffix++;
+        }
+        
+        if (prefix == oldLength && prefix == newLength) {
+            return new Change(lineCount, lineCount, lineCount);
+        }
+        
+        int shift = newLength - oldLength;
+        int oldEditEnd = oldLength - suffix;
+        int newEditEnd = newLength - suffix;
+        
+        int firstLine = lineContaining(prefix);
+        if (firstUnclosed != -1 && firstUnclosed < oldEditEnd) {
+            firstLine = Math.min(firstLine, lineContaining(firstUnclosed));
+        }
+        
+        while (firstLine > 0 
+                && tokens.getLineState(firstLine) == JavaLexer.LineState.IN_COMMENT) {
+            firstLine--;
+        }
+        
+        // Lex a line at a time, until the lexer reaches a line which it was
+        // in the same state at before the edit
+        int start = lineOffset(firstLine);
+        JavaLexer.LineState state = tokens.getLineState(firstLine);
+        JavaLexer lexer = new JavaLexer(newSource);
+        PackedTokens.Builder builder = new PackedTokens.Builder(newSource, start);
+        
+        int position = start;
+        int endLine = lineCount;
+        while (position < newLength) {
+            int lineEnd = newSource.indexOf('\n', position);
+            lineEnd = (lineEnd == -1) ? newLength : lineEnd + 1;
+            
+            state = lexer.lexLines(position, lineEnd, state, builder);
+            position = lineEnd;
+            
+            if (position >= newEditEnd && position < newLength) {
+                int oldLine = lineStartingAt(position - shift);
+                if (oldLine != -1 && tokens.getLineState(oldLine) == state) {
+                    endLine = oldLine;
+                    break;
+                }
+            }
+        }
+        
+        PackedTokens relexed = builder.build();
+        int oldFirstUnclosed = firstUnclosed;
+        int convergedAt = lineOffset(endLine);
+        
+        tokens = tokens.splice(firstLine, endLine, relexed, newSource, shift);
+        source = newSource;
+        
+        // Any unclosed opener before the relexed lines would have been
+        // relexed too, so the first one is either in them or after them
+        firstUnclosed = findUnclosed(relexed, 0);
+        if (firstUnclosed == -1 && oldFirstUnclosed != -1) {
+            if (oldFirstUnclosed >= convergedAt) {
+                firstUnclosed = oldFirstUnclosed + shift;
+            } else {
+                firstUnclosed = findUnclosed(tokens, firstLine + relexed.getLineCount());
+            }
+        }
+        
+        return new Change(firstLine, endLine, firstLine + relexed.getLineCount());
+    }
+    
+    /**
+     * Returns where the given line starts in the current source. The line
+     * count is treated as a line starting at the end of the source.
+     */
+    private int lineOffset(int line) {
+        if (line == tokens.getLineCount()) {
+            return source.length();
+        } else {
+            return tokens.getStart(tokens.getLineStart(line));
+        }
+    }
+    
+    /**
+     * Returns the line whose tokens include the given offset of the current
+     * source. The end of the source belongs to the last line, unless that
+     * line ends with a newline.
+     */
+    private int lineContaining(int offset) {
+        int low = 0;
+        int high = tokens.getLineCount();
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineOffset(middle) <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        
+        if (low == tokens.getLineCount() && low > 0 
+                && source.charAt(source.length() - 1) != '\n') {
+            low--;
+        }
+        
+        return low;
+    }
+    
+    /**
+     * Returns the line which starts at the given offset of the current source,
+     * or -1 if no line starts there.
+     */
+    private int lineStartingAt(int offset) {
+        int line = lineContaining(offset);
+        if (line < tokens.getLineCount() && lineOffset(line) == offset) {
+            return line;
+        } else {
+            return -1;
+        }
+    }
+    
+    /**
+     * Finds the first block comment opener that never gets closed, starting
+     * from the given line. Since an opener is lexed as a comment whenever it
+     * is closed, these are the RAW tokens that start with a slash and a star.
+     */
+    private static int findUnclosed(PackedTokens tokens, int fromLine) {
+        if (fromLine >= tokens.getLineCount()) {
+            return -1;
+        }
+        
+        CharSequence text = tokens.getSource();
+        for (int i = tokens.getLineStart(fromLine); i < tokens.size(); i++) {
+            int start = tokens.getStart(i);
+            if (tokens.getType(i) == TokenType.RAW && tokens.getLength(i) >= 2
+                    && text.charAt(start) == '/' && text.charAt(start + 1) == '*') {
+                return start;
+            }
+        }
+        
+        return -1;
+    }
+}
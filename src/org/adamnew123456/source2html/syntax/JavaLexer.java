@@ -1,17 +1,71 @@
 package org.adamnew123456.source2html.syntax;
+import org.adamnew123456.source2html.syntax.dfa.FailureMemo;
+import org.adamnew123456.source2html.syntax.dfa.Regex;
+import org.adamnew123456.source2html.syntax.dfa.StateTable;
 import org.adamnew123456.source2html.syntax.parsing.*;
 
+import java.io.Reader;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Iterator;
-import java.util.Optional;
+import java.util.stream.IntStream;
 
 /**
  * This is responsible for converting Java source code into a list of tokens.
+ * 
+ * The grammar is written using parsers, but by default they aren't run
+ * directly - instead, they are compiled into a StateTable when this class is
+ * loaded, which finds the same tokens without any backtracking.
+ * 
+ * A lexer can also read its code from a Reader, in which case it only keeps
+ * the part of the code that it's working on in memory - usually, no more 
+ * than the longest token. The tokens it gives out have their own copies of
+ * their text, since there's no source for them to share.
+ * 
+ * That bound doesn't hold for a block comment which is never closed. The
+ * lexer can't tell that it isn't a comment until it has scanned to the end
+ * of the input, and everything it scans over has to be kept in case it has
+ * to go back, so the whole rest of the input ends up in memory. Strings 
+ * and characters can't run past the end of their line, so the most they 
+ * can hold onto is a line.
+ * 
+ * Rendering doesn't use this mode: a JavaFile keeps its whole source in 
+ * memory, and its tokens are ranges over that source, so source files are
+ * always lexed from a String. Reading from a Reader is for callers which 
+ * only need some of the tokens, such as PackageScanner.findPackage(Reader).
  */
 public class JavaLexer implements Iterator<Token>, Iterable<Token> {
+    /**
+     * The ways that the lexer can find tokens.
+     */
+    public enum Engine {
+        // Runs the parsers one after the other, until one matches
+        PARSERS,
+        
+        // Like PARSERS, but runs the parsers after they've been compiled by 
+        // the ParserCompiler
+        COMPILED_PARSERS,
+        
+        // Runs the StateTable compiled from the parsers
+        STATE_TABLE,
+    }
+    
+    /**
+     * What the lexer is in the middle of at the start of a line. Block
+     * comments are the only tokens which can run over a line boundary, so
+     * this is all that lexLines needs to pick up from any line.
+     */
+    public enum LineState {
+        // The line starts with a new token
+        NORMAL,
+        
+        // The line starts inside of a block comment, which ends later on
+        IN_COMMENT,
+    }
+    
     static List<String> keywords = Arrays.asList(new String[] {
         "abstract", "continue", "for", "new", "switch",
         "assert", "default", "goto", "package", "synchronized",
@@ -24,23 +78,34 @@ public class JavaLexer implements Iterator<Token>, Iterable<Token> {
         "class", "finally", "long", "strictfp", "volatile",
         "const", "float", "native", "super", "while",
     });
+    
+    private static KeywordTable keywordTable = new KeywordTable(keywords);
+    
+    /**
+     * Returns the words which the lexer treats as keywords.
+     */
+    public static List<String> getKeywords() {
+        return Collections.unmodifiableList(keywords);
+    }
 
     private static Parser ANY = new AnyCharParser();
     private static Parser SLASH = new GroupParser("/");
     private static Parser BKSLASH = new GroupParser("\\");
     private static Parser STAR = new GroupParser("*");
     private static Parser NEWLINE = new GroupParser("\n");
-    private static Parser LOWERCASE = new GroupParser("abcdefghijklmnopqrstuvwxyz");
+    private static CharClass LOWERCASE_CHARS = CharClass.range('a', 'z');
+    private static Parser LOWERCASE = new GroupParser(LOWERCASE_CHARS);
     private static Parser QUOTE = new GroupParser("'");
     private static Parser DQUOTE = new GroupParser("\"");
-    private static Parser DIGIT = new GroupParser("0123456789");
+    private static Parser DIGIT = new GroupParser(CharClass.range('0', '9'));
     private static Parser STR_VALID_CHAR = new NegativeGroupParser("\\\n");
     
     // All backslash escapes that appear in strings and characters
     private static Parser CHAR_ESCAPES =
             new SequenceParser(BKSLASH, new GroupParser("btnfr\"'\\"));
     
-    // The \uXXX escape is special, since it doesn't fit the normal pattern
+    // The unicode escape (a backslash, u and four digits) is special, since it
+    // doesn't fit the normal pattern
     private static Parser UNICODE_ESCAPES =
             new SequenceParser(BKSLASH, new GroupParser("u"),
                     DIGIT, DIGIT, DIGIT, DIGIT);
@@ -71,13 +136,183 @@ public class JavaLexer implements Iterator<Token>, Iterable<Token> {
                             new EitherParser(CHAR_ESCAPES, UNICODE_ESCAPES, STR_VALID_CHAR)),
                     DQUOTE);
     
+    /*
+     * The rules are tried in order, and the first one that matches decides
+     * what type the token has. The first rule matches both keywords and 
+     * plain lowercase words, which are sorted out in makeToken.
+     */
+    private static final int KEYWORD_RULE = 0;
+    
+    private static Parser[] rules = new Parser[] {
+        possibleKeyword, singleLineComment, multiLineComment,
+        charParser, stringParser, ANY,
+    };
+    
+    private static TokenType[] ruleTypes = new TokenType[] {
+        TokenType.RAW, TokenType.COMMENT, TokenType.COMMENT,
+        TokenType.CHARACTER, TokenType.STRING, TokenType.RAW,
+    };
+    
+    // The last rule matches any character, and is what the others fall back on
+    private static final int FALLBACK_RULE = rules.length - 1;
+    
+    // The rules as regular expressions, which both the StateTable and the
+    // dispatch table are built from
+    private static Regex[] ruleRegexes = Arrays.stream(rules)
+            .map(Parser::toRegex)
+            .toArray(Regex[]::new);
+    
+    private static StateTable stateTable = compileRules(ruleRegexes);
+    
+    private static Parser[] compiledRules = Arrays.stream(rules)
+            .map(ParserCompiler::compile)
+            .toArray(Parser[]::new);
+    
+    /*
+     * Most tokens can only be matched by one or two of the rules, which can be
+     * told from their first character. This maps each ASCII character onto
+     * the rules which can match a token starting with that character; other 
+     * characters have to try all the rules.
+     */
+    private static final int DISPATCH_SIZE = 128;
+    private static int[][] dispatch = buildDispatch(ruleRegexes);
+    private static int[] allRules = IntStream.range(0, rules.length).toArray();
+    
+    // The characters (other than newlines, which end runs) that can only be
+    // tokens on their own, and so can be skipped over in runs of RAW tokens
+    private static CharClass plainChars = buildPlainChars();
+    
+    private final CharSequence source;
+    private final boolean isStreaming;
     private final CheckpointStream stream;
+    private final Engine engine;
+    private final FailureMemo memo;
     private List<Token> tokenBuffer;
     
     public JavaLexer(String code) {
-        stream = new CheckpointStream();
-        stream.extend(code);
+        this(code, Engine.STATE_TABLE);
+    }
+    
+    public JavaLexer(String code, Engine engine) {
+        this(code, code.toCharArray(), engine);
+    }
+    
+    /**
+     * Creates a lexer over code which has already been copied out into the
+     * given array. The array isn't changed, so lexers over the same code can
+     * share it.
+     */
+    JavaLexer(String code, char[] chars, Engine engine) {
+        source = code;
+        isStreaming = false;
+        stream = new CheckpointStream(chars, chars.length);
         tokenBuffer = new LinkedList<Token>();
+        this.engine = engine;
+        memo = stateTable.newMemo();
+    }
+    
+    public JavaLexer(Reader reader) {
+        this(reader, Engine.STATE_TABLE);
+    }
+    
+    public JavaLexer(Reader reader, Engine engine) {
+        stream = new CheckpointStream(reader);
+        source = new StreamText(stream);
+        isStreaming = true;
+        tokenBuffer = new LinkedList<Token>();
+        this.engine = engine;
+        memo = stateTable.newMemo();
+    }
+    
+    /**
+     * Lets the part of a stream that's still in its window be read like any
+     * other source, for looking up keywords.
+     */
+    private static class StreamText implements CharSequence {
+        private final CheckpointStream stream;
+        
+        StreamText(CheckpointStream stream) {
+            this.stream = stream;
+        }
+        
+        @Override
+        public char charAt(int index) {
+            return stream.charAt(index);
+        }
+        
+        @Override
+        public int length() {
+            return stream.position();
+        }
+        
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return stream.slice(start, end - start);
+        }
+        
+        @Override
+        public String toString() {
+            return stream.slice(0, stream.position());
+        }
+    }
+    
+    /**
+     * Builds the StateTable out of the lexer's rules.
+     */
+    private static StateTable compileRules(Regex[] regexes) {
+        return StateTable.compile(regexes);
+    }
+    
+    /**
+     * Builds the dispatch table, by checking which rules can still match
+     * after reading each character.
+     */
+    private static int[][] buildDispatch(Regex[] regexes) {
+        int[][] table = new int[DISPATCH_SIZE][];
+        for (char c = 0; c < DISPATCH_SIZE; c++) {
+            final char first = c;
+            table[c] = IntStream.range(0, rules.length)
+                    .filter(rule -> regexes[rule].derivative(first) != Regex.NOTHING)
+                    .toArray();
+        }
+        
+        return table;
+    }
+    
+    /**
+     * Builds the class of the ASCII characters that only the fallback rule
+     * can match, leaving out newlines.
+     */
+    private static CharClass buildPlainChars() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = 0; c < DISPATCH_SIZE; c++) {
+            if (c != '\n' && isPlain(c)) {
+                chars.append(c);
+            }
+        }
+        
+        return CharClass.of(chars.toString());
+    }
+    
+    /**
+     * Returns the rules which can match a token starting with the given
+     * character.
+     */
+    private static int[] rulesStartingWith(char c) {
+        if (c < DISPATCH_SIZE) {
+            return dispatch[c];
+        } else {
+            return allRules;
+        }
+    }
+    
+    /**
+     * Whether the given character can only ever be a token on its own, as
+     * a match for the fallback rule.
+     */
+    private static boolean isPlain(char c) {
+        int[] candidates = rulesStartingWith(c);
+        return candidates.length == 1 && candidates[0] == FALLBACK_RULE;
     }
 
     @Override
@@ -110,42 +345,234 @@ public class JavaLexer implements Iterator<Token>, Iterable<Token> {
         }
     }
     
+    /**
+     * Lexes everything left in the input stream into packed form, splitting
+     * the tokens so that none of them run over a line boundary. This 
+     * consumes the lexer, just as iterating through it would.
+     * 
+     * Lexers that read from a Reader can't do this, since they don't hold on
+     * to the whole source.
+     */
+    public PackedTokens lexAll() {
+        if (isStreaming) {
+            throw new UnsupportedOperationException(
+                    "Lexers reading from a Reader can only be iterated");
+        }
+        
+        PackedTokens.Builder builder = new PackedTokens.Builder(source);
+        for (Token token: tokenBuffer) {
+            builder.add(token.getTokenType(), token.getStart(), token.getLength());
+        }
+        
+        tokenBuffer.clear();
+        while (!stream.isEmpty()) {
+            int start = stream.position();
+            TokenType type = readToken();
+            builder.add(type, start, stream.position() - start);
+        }
+        
+        return builder.build();
+    }
+    
+    /**
+     * Lexes the lines from start up to end, as though the lexer had been in
+     * the given state at the start, and returns the state it is in at the end.
+     * Both start and end have to be at the start of a line (or the end of the
+     * source), and the lexer has to be at or before the start.
+     * 
+     * The tokens are added to the builder, with the last one cut off at the
+     * end if it runs past it. Since the state is all the lexer carries over
+     * from one line to the next, lexing the lines in pieces this way gives 
+     * the same tokens as lexing them all in one go.
+     */
+    public LineState lexLines(int start, int end, LineState state, 
+            PackedTokens.Builder builder) {
+        if (isStreaming) {
+            throw new UnsupportedOperationException(
+                    "Lexers reading from a Reader can only be iterated");
+        }
+        
+        tokenBuffer.clear();
+        stream.skip(start - stream.position());
+        
+        if (state == LineState.IN_COMMENT) {
+            int commentEnd = findCommentEnd(start);
+            if (commentEnd > end) {
+                builder.add(TokenType.COMMENT, start, end - start);
+                stream.skip(end - start);
+                return LineState.IN_COMMENT;
+            }
+            
+            builder.add(TokenType.COMMENT, start, commentEnd - start);
+            stream.skip(commentEnd - start);
+        }
+        
+        while (stream.position() < end) {
+            int tokenStart = stream.position();
+            stream.checkpoint();
+            TokenType type = readToken();
+            int tokenEnd = stream.position();
+            
+            if (tokenEnd > end) {
+                if (type != TokenType.COMMENT) {
+                    throw new IllegalStateException(
+                            String.format("%s token at %d runs over the line boundary at %d",
+                                    type, tokenStart, end));
+                }
+                
+                // Leave the lexer at the end, so that it can carry on from 
+                // there with the next lines
+                stream.restore();
+                stream.skip(end - tokenStart);
+                builder.add(type, tokenStart, end - tokenStart);
+                return LineState.IN_COMMENT;
+            }
+            
+            stream.commit();
+            builder.add(type, tokenStart, tokenEnd - tokenStart);
+        }
+        
+        return LineState.NORMAL;
+    }
+    
+    /**
+     * Returns where the block comment that the given position is inside of
+     * ends, just after its closing star and slash.
+     */
+    private int findCommentEnd(int position) {
+        for (int i = position; i < source.length() - 1; i++) {
+            if (source.charAt(i) == '*' && source.charAt(i + 1) == '/') {
+                return i + 2;
+            }
+        }
+        
+        return source.length();
+    }
+    
     /**
      * Reads the next token from the input stream.
      */
     private Token getNextToken() {
-        Optional<String> result;
-        
-        result = possibleKeyword.tryParse(stream);
-        if (result.isPresent()) {
-            if (keywords.contains(result.get())) {
-                return new Token(result.get(), TokenType.KEYWORD);
-            } else {
-                return new Token(result.get(), TokenType.RAW);
-            }
+        int start = stream.position();
+        
+        // Hold the start of the token in the stream's window until its text
+        // has been copied out
+        stream.checkpoint();
+        TokenType type = readToken();
+        int length = stream.position() - start;
+        stream.commit();
+        
+        if (isStreaming) {
+            return new Token(stream.slice(start, length), type);
+        } else {
+            return new Token(source, start, length, type);
+        }
+    }
+    
+    /**
+     * Moves the input stream over the next token, and returns its type.
+     * 
+     * Rules only report how much of the stream they matched, so the text of
+     * the token never has to be pulled out of the stream.
+     */
+    private TokenType readToken() {
+        switch (engine) {
+        case PARSERS:
+            return readParsedToken(rules);
+        case COMPILED_PARSERS:
+            return readParsedToken(compiledRules);
+        default:
+            return readTableToken();
         }
+    }
+    
+    /**
+     * Reads the next token by trying, in turn, each parser that could match
+     * the next character.
+     */
+    private TokenType readParsedToken(Parser[] parsers) {
+        int start = stream.position();
         
-        result = singleLineComment.tryParse(stream);
-        if (result.isPresent()) {
-            return new Token(result.get(), TokenType.COMMENT);
+        for (int rule: rulesStartingWith(stream.peekChar())) {
+            int length = parsers[rule].tryMatch(stream);
+            if (length != Parser.NO_MATCH) {
+                return finishToken(rule, start);
+            }
         }
         
-        result = multiLineComment.tryParse(stream);
-        if (result.isPresent()) {
-            return new Token(result.get(), TokenType.COMMENT);
+        throw new JavaLexerFailure(stream.toString());
+    }
+    
+    /**
+     * Reads the next token by running the StateTable.
+     */
+    private TokenType readTableToken() {
+        long match = stateTable.match(stream, memo);
+        if (match == StateTable.NO_MATCH) {
+            throw new JavaLexerFailure(stream.toString());
         }
         
-        result = charParser.tryParse(stream);
-        if (result.isPresent()) {
-            return new Token(result.get(), TokenType.CHARACTER);
+        int start = stream.position();
+        stream.skip(StateTable.matchLength(match));
+        return finishToken(StateTable.matchRule(match), start);
+    }
+    
+    /**
+     * Works out the type of the text matched by the given rule, which runs
+     * from the start up to the current position of the stream.
+     * 
+     * RAW tokens are extended over any RAW tokens which follow them on the
+     * same line, so that runs of punctuation and identifiers don't each end
+     * up as their own token.
+     */
+    private TokenType finishToken(int rule, int start) {
+        if (rule == KEYWORD_RULE 
+                && keywordTable.contains(source, start, stream.position() - start)) {
+            return TokenType.KEYWORD;
         }
         
-        result = stringParser.tryParse(stream);
-        if (result.isPresent()) {
-            return new Token(result.get(), TokenType.STRING);
+        TokenType type = ruleTypes[rule];
+        if (type == TokenType.RAW) {
+            extendRawRun();
         }
         
-        result = ANY.tryParse(stream);
-        return new Token(result.get(), TokenType.RAW);
+        return type;
+    }
+    
+    /**
+     * Consumes the plain characters and non-keyword words that come next on
+     * the current line.
+     * 
+     * This scans the stream directly, instead of going through the rules,
+     * since it's run after nearly every token whatever the engine is. Words
+     * are found the same way that the keyword rule finds them - as runs of
+     * lowercase letters.
+     */
+    private void extendRawRun() {
+        while (stream.charAt(stream.position() - 1) != '\n') {
+            stream.skipWhile(plainChars);
+            if (stream.isEmpty()) {
+                return;
+            }
+            
+            char next = stream.peekChar();
+            if (next == '\n') {
+                stream.getChar();
+                return;
+            } else if (!LOWERCASE_CHARS.contains(next)) {
+                return;
+            }
+            
+            int wordStart = stream.position();
+            stream.checkpoint();
+            
+            int length = stream.skipWhile(LOWERCASE_CHARS);
+            if (keywordTable.contains(source, wordStart, length)) {
+                stream.restore();
+                return;
+            }
+            
+            stream.commit();
+        }
     }
 }
@@ -0,0 +1,112 @@
+package org.adamnew123456.source2html.syntax;
+
+import java.util.Collection;
+
+/**
+ * A KeywordTable is a perfect hash table of keywords, which can tell whether
+ * a range of some source is a keyword without copying the range out into a
+ * String first.
+ * 
+ * The table is generated from the list of keywords when it's created, by
+ * trying hash seeds until one is found which gives every keyword its own
+ * slot. That way, a lookup is one hash and (at most) one comparison, no
+ * matter how many keywords there are.
+ */
+public class KeywordTable {
+    // How many seeds to try at each table size before making the table bigger
+    private static final int SEEDS_PER_SIZE = 1000;
+    
+    private final String[] slots;
+    private final int mask;
+    private final int seed;
+    private final int maxLength;
+    
+    public KeywordTable(Collection<String> keywords) {
+        int longest = 0;
+        for (String keyword: keywords) {
+            longest = Math.max(longest, keyword.length());
+        }
+        
+        maxLength = longest;
+        
+        // Start with a table at least twice as big as the keyword list, which 
+        // makes it easy to find a seed without any collisions
+        int size = Integer.highestOneBit(Math.max(keywords.size(), 1) * 2 - 1) * 2;
+        while (true) {
+            for (int candidate = 1; candidate <= SEEDS_PER_SIZE; candidate++) {
+                String[] table = fill(keywords, candidate, size - 1);
+                if (table != null) {
+                    slots = table;
+                    mask = size - 1;
+                    seed = candidate;
+                    return;
+                }
+            }
+            
+            size *= 2;
+        }
+    }
+    
+    /**
+     * Puts each keyword into its slot, or returns null if any two keywords 
+     * land in the same slot.
+     */
+    private static String[] fill(Collection<String> keywords, int seed, int mask) {
+        String[] table = new String[mask + 1];
+        for (String keyword: keywords) {
+            int slot = hash(seed, keyword, 0, keyword.length()) & mask;
+            if (table[slot] != null && !table[slot].equals(keyword)) {
+                return null;
+            }
+            
+            table[slot] = keyword;
+        }
+        
+        return table;
+    }
+    
+    /**
+     * Hashes the given range of the text (a seeded FNV-1a, with some extra
+     * mixing at the end so that the low bits depend on every character).
+     */
+    private static int hash(int seed, CharSequence text, int start, int length) {
+        int hash = seed * 0x9e3779b9;
+        for (int i = start; i < start + length; i++) {
+            hash = (hash ^ text.charAt(i)) * 0x01000193;
+        }
+        
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+    
+    /**
+     * Whether the given range of the source is exactly one of the keywords.
+     */
+    public boolean contains(CharSequence source, int start, int length) {
+        if (length > maxLength) {
+            return false;
+        }
+        
+        String keyword = slots[hash(seed, source, start, length) & mask];
+        if (keyword == null || keyword.length() != length) {
+            return false;
+        }
+        
+        for (int i = 0; i < length; i++) {
+            if (keyword.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Whether the given word is one of the keywords.
+     */
+    public boolean contains(String word) {
+        return contains(word, 0, word.length());
+    }
+}
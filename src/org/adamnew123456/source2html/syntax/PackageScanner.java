@@ -0,0 +1,171 @@
+package org.adamnew123456.source2html.syntax;
+
+import java.io.Reader;
+
+/**
+ * The PackageScanner finds the package that a source file declares, by
+ * lexing only the start of the file. Since it goes by tokens, it isn't
+ * fooled by a package declaration inside of a comment or string, and it
+ * can read a declaration which is split over several lines or has comments
+ * inside of it.
+ *
+ * Scanning stops at the package declaration, or at the first thing which
+ * can't come before one - an import, a type declaration, or the end of any
+ * other declaration. So, only the header of the file is ever read.
+ */
+public class PackageScanner {
+    /**
+     * Returns the name of the package declared by the code in the reader, or
+     * null if the code is in the default package. The reader is read no 
+     * further than the lexer needs to see the end of the declaration, and 
+     * isn't closed.
+     */
+    public static String findPackage(Reader reader) {
+        return findPackage(new JavaLexer(reader));
+    }
+    
+    /**
+     * Returns the name of the package declared by the code, or null if the
+     * code is in the default package. This is for code which is already in
+     * memory, and lexes it directly rather than through a Reader.
+     */
+    public static String findPackage(String code) {
+        return findPackage(new JavaLexer(code));
+    }
+    
+    /**
+     * Reads tokens out of the lexer until it can tell what package they
+     * declare.
+     */
+    private static String findPackage(JavaLexer lexer) {
+        while (lexer.hasNext()) {
+            Token token = lexer.next();
+            switch (token.getTokenType()) {
+            case KEYWORD:
+                if (isChunk(token, "package")) {
+                    return readName(lexer);
+                } else if (isChunk(token, "import") || isChunk(token, "class")
+                        || isChunk(token, "interface") || isChunk(token, "enum")) {
+                    return null;
+                }
+                
+                break;
+            case RAW:
+                // Annotations can come before the declaration, but once a
+                // declaration of any kind has ended, there can't be one
+                if (indexOf(token, ';') != -1 || indexOf(token, '{') != -1) {
+                    return null;
+                }
+                
+                break;
+            default:
+                break;
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Reads the name after the package keyword, up to the semicolon which
+     * ends it. Returns null if what follows isn't a valid name.
+     */
+    private static String readName(JavaLexer lexer) {
+        StringBuilder name = new StringBuilder();
+        boolean afterSpace = false;
+        while (lexer.hasNext()) {
+            Token token = lexer.next();
+            switch (token.getTokenType()) {
+            case COMMENT:
+                afterSpace = true;
+                break;
+            case RAW:
+                int end = indexOf(token, ';');
+                int length = end == -1 ? token.getLength() : end;
+                for (int i = 0; i < length; i++) {
+                    char c = token.charAt(i);
+                    if (Character.isWhitespace(c)) {
+                        afterSpace = true;
+                    } else if (c == '.' || Character.isJavaIdentifierPart(c)) {
+                        // Two words in a row, with only space between them
+                        if (afterSpace && c != '.' && name.length() > 0
+                                && name.charAt(name.length() - 1) != '.') {
+                            return null;
+                        }
+                        
+                        name.append(c);
+                        afterSpace = false;
+                    } else {
+                        return null;
+                    }
+                }
+                
+                if (end != -1) {
+                    return isValidName(name) ? name.toString() : null;
+                }
+                
+                break;
+            default:
+                // Keywords and literals can't be part of a package name
+                return null;
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Whether the name is a dotted list of identifiers.
+     */
+    private static boolean isValidName(CharSequence name) {
+        boolean atStart = true;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '.') {
+                if (atStart) {
+                    return false;
+                }
+                
+                atStart = true;
+            } else {
+                if (atStart && !Character.isJavaIdentifierStart(c)) {
+                    return false;
+                }
+                
+                atStart = false;
+            }
+        }
+        
+        return !atStart;
+    }
+    
+    /**
+     * Whether the token's text is exactly the given word.
+     */
+    private static boolean isChunk(Token token, String word) {
+        if (token.getLength() != word.length()) {
+            return false;
+        }
+        
+        for (int i = 0; i < word.length(); i++) {
+            if (token.charAt(i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Returns where the character first occurs in the token, or -1.
+     */
+    private static int indexOf(Token token, char c) {
+        for (int i = 0; i < token.getLength(); i++) {
+            if (token.charAt(i) == c) {
+                return i;
+            }
+        }
+        
+        return -1;
+    }
+}
@@ -0,0 +1,268 @@
+package org.adamnew123456.source2html.syntax;
+
+import java.util.Arrays;
+
+/**
+ * PackedTokens holds all of the tokens lexed from a source, without keeping
+ * a Token object for each of them. Instead, there is one array of token
+ * types and one array of offsets, so that each token takes up about five
+ * bytes, plus four bytes for each line.
+ * 
+ * Tokens never run over a line boundary, and the first token on each line is
+ * worked out ahead of time, so that renderers can walk the tokens a line at
+ * a time:
+ * 
+ *     for (int line = 0; line < tokens.getLineCount(); line++) {
+ *         for (int i = tokens.getLineStart(line); i < tokens.getLineEnd(line); i++) {
+ *             ... tokens.getType(i), tokens.getStart(i), tokens.getLength(i) ...
+ *         }
+ *     }
+ */
+public class PackedTokens {
+    private static final TokenType[] TYPES = TokenType.values();
+    
+    private final CharSequence source;
+    private final int count;
+    
+    // The TokenType ordinal of each token
+    private final byte[] types;
+    
+    // Where each token starts in the source, plus the end of the last token
+    private final int[] offsets;
+    
+    // The first token of each line, plus the number of tokens
+    private final int[] lineStarts;
+    
+    private PackedTokens(CharSequence source, int count, byte[] types, 
+            int[] offsets, int[] lineStarts) {
+        this.source = source;
+        this.count = count;
+        this.types = types;
+        this.offsets = offsets;
+        this.lineStarts = lineStarts;
+    }
+    
+    /**
+     * Returns the source that the tokens were lexed from.
+     */
+    public CharSequence getSource() {
+        return source;
+    }
+    
+    /**
+     * Returns the number of tokens.
+     */
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Returns the type of the token at the given index.
+     */
+    public TokenType getType(int index) {
+        return TYPES[types[index]];
+    }
+    
+    /**
+     * Returns the offset in the source where the given token starts.
+     */
+    public int getStart(int index) {
+        return offsets[index];
+    }
+    
+    /**
+     * Returns the number of characters in the given token.
+     */
+    public int getLength(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+    
+    /**
+     * Returns a Token for the given index. This allocates a new Token each
+     * time, so it's better to use the other getters where possible.
+     */
+    public Token getToken(int index) {
+        return new Token(source, getStart(index), getLength(index), getType(index));
+    }
+    
+    /**
+     * Returns the number of lines the tokens are on.
+     */
+    public int getLineCount() {
+        return lineStarts.length - 1;
+    }
+    
+    /**
+     * Returns the index of the first token on the given line, counting 
+     * lines from zero.
+     */
+    public int getLineStart(int line) {
+        return lineStarts[line];
+    }
+    
+    /**
+     * Returns the index after the last token on the given line.
+     */
+    public int getLineEnd(int line) {
+        return lineStarts[line + 1];
+    }
+    
+    /**
+     * Returns the state the lexer was in at the start of the given line, or
+     * at the end of the source if the line is the line count.
+     * 
+     * This doesn't have to be stored, since a line can only start inside of 
+     * a block comment if the line before it ended with a piece of that
+     * comment - every other token which ends a line leaves the newline as a
+     * RAW token of its own.
+     */
+    public JavaLexer.LineState getLineState(int line) {
+        if (line == 0) {
+            return JavaLexer.LineState.NORMAL;
+        }
+        
+        int last = lineStarts[line] - 1;
+        if (types[last] == TokenType.COMMENT.ordinal() 
+                && source.charAt(offsets[last + 1] - 1) == '\n') {
+            return JavaLexer.LineState.IN_COMMENT;
+        } else {
+            return JavaLexer.LineState.NORMAL;
+        }
+    }
+    
+    /**
+     * Returns a copy of these tokens where the lines from firstLine up to
+     * endLine have been swapped out for the lines of the replacement. The
+     * tokens after the replaced lines are moved over by the shift, so that
+     * they line up with the new source.
+     */
+    PackedTokens splice(int firstLine, int endLine, PackedTokens replacement,
+            CharSequence newSource, int shift) {
+        int headCount = lineStarts[firstLine];
+        int tailStart = lineStarts[endLine];
+        int middleCount = replacement.count;
+        int newCount = headCount + middleCount + (count - tailStart);
+        
+        byte[] newTypes = new byte[newCount];
+        System.arraycopy(types, 0, newTypes, 0, headCount);
+        System.arraycopy(replacement.types, 0, newTypes, headCount, middleCount);
+        System.arraycopy(types, tailStart, newTypes, headCount + middleCount, 
+                count - tailStart);
+        
+        int[] newOffsets = new int[newCount + 1];
+        System.arraycopy(offsets, 0, newOffsets, 0, headCount);
+        System.arraycopy(replacement.offsets, 0, newOffsets, headCount, middleCount);
+        for (int i = tailStart; i <= count; i++) {
+            newOffsets[headCount + middleCount + i - tailStart] = offsets[i] + shift;
+        }
+        
+        int middleLines = replacement.getLineCount();
+        int[] newLineStarts = new int[firstLine + middleLines + lineStarts.length - endLine];
+        System.arraycopy(lineStarts, 0, newLineStarts, 0, firstLine);
+        for (int i = 0; i < middleLines; i++) {
+            newLineStarts[firstLine + i] = replacement.lineStarts[i] + headCount;
+        }
+        
+        for (int i = endLine; i < lineStarts.length; i++) {
+            newLineStarts[firstLine + middleLines + i - endLine] = 
+                    lineStarts[i] - tailStart + headCount + middleCount;
+        }
+        
+        return new PackedTokens(newSource, newCount, newTypes, newOffsets, newLineStarts);
+    }
+    
+    /**
+     * Builds up PackedTokens one token at a time. Tokens have to be added in
+     * order, and they have to cover the source without any gaps.
+     */
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 64;
+        
+        private final CharSequence source;
+        private int count = 0;
+        private byte[] types = new byte[INITIAL_CAPACITY];
+        private int[] offsets = new int[INITIAL_CAPACITY + 1];
+        private int lineCount = 0;
+        private int[] lineStarts = new int[INITIAL_CAPACITY];
+        private boolean atLineStart = true;
+        
+        public Builder(CharSequence source) {
+            this(source, 0);
+        }
+        
+        /**
+         * Creates a builder for tokens which start partway through the
+         * source, at the start of a line.
+         */
+        public Builder(CharSequence source, int start) {
+            this.source = source;
+            offsets[0] = start;
+        }
+        
+        /**
+         * Adds a token, splitting it up if it runs over a line boundary.
+         */
+        public void add(TokenType type, int start, int length) {
+            if (start != offsets[count]) {
+                throw new IllegalArgumentException(
+                        String.format("Token at %d doesn't follow the token ending at %d",
+                                start, offsets[count]));
+            }
+            
+            int end = start + length;
+            for (int i = start; i < end; i++) {
+                if (source.charAt(i) == '\n') {
+                    append(type, i + 1);
+                    atLineStart = true;
+                }
+            }
+            
+            if (offsets[count] < end) {
+                append(type, end);
+            }
+        }
+        
+        /**
+         * Adds all of the given tokens, which must follow on from the tokens
+         * already added.
+         */
+        public void addAll(PackedTokens tokens) {
+            for (int i = 0; i < tokens.size(); i++) {
+                add(tokens.getType(i), tokens.getStart(i), tokens.getLength(i));
+            }
+        }
+        
+        /**
+         * Adds a single token, which ends at the given offset.
+         */
+        private void append(TokenType type, int end) {
+            if (count == types.length) {
+                types = Arrays.copyOf(types, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2 + 1);
+            }
+            
+            if (atLineStart) {
+                if (lineCount == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                }
+                
+                lineStarts[lineCount++] = count;
+                atLineStart = false;
+            }
+            
+            types[count] = (byte)type.ordinal();
+            offsets[count + 1] = end;
+            count++;
+        }
+        
+        public PackedTokens build() {
+            int[] lines = Arrays.copyOf(lineStarts, lineCount + 1);
+            lines[lineCount] = count;
+            
+            return new PackedTokens(source, count, 
+                    Arrays.copyOf(types, count),
+                    Arrays.copyOf(offsets, count + 1),
+                    lines);
+        }
+    }
+}
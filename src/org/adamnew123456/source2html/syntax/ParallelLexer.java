@@ -0,0 +1,101 @@
+package org.adamnew123456.source2html.syntax;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ParallelLexer lexes large sources by splitting them into chunks of
+ * lines, and lexing the chunks at the same time on different threads.
+ * 
+ * Each chunk has to start in some LineState, which isn't known until the
+ * chunk before it has been lexed. So, every chunk is lexed on the guess that
+ * it starts in the NORMAL state, which is almost always right. Afterwards,
+ * the chunks are walked in order, and any chunk whose guess turned out to be
+ * wrong (because a block comment runs into it) is lexed again in the right
+ * state. The result is the same as lexing the whole source with a single
+ * JavaLexer.
+ */
+public class ParallelLexer {
+    // About how many characters go into each chunk - sources that fit into
+    // a single chunk are just lexed on the current thread
+    private static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    
+    /**
+     * One chunk of lines, along with what lexing it produced.
+     */
+    private static class Chunk {
+        final int start;
+        final int end;
+        JavaLexer.LineState entryState;
+        JavaLexer.LineState exitState;
+        PackedTokens tokens;
+        
+        Chunk(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+        
+        /**
+         * Lexes the chunk, starting in the given state.
+         */
+        void lex(String code, char[] chars, JavaLexer.LineState state) {
+            JavaLexer lexer = new JavaLexer(code, chars, JavaLexer.Engine.STATE_TABLE);
+            PackedTokens.Builder builder = new PackedTokens.Builder(code, start);
+            entryState = state;
+            exitState = lexer.lexLines(start, end, state, builder);
+            tokens = builder.build();
+        }
+    }
+    
+    /**
+     * Lexes the code, using chunks of the default size.
+     */
+    public static PackedTokens lexAll(String code) {
+        return lexAll(code, DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * Lexes the code, in chunks of about the given number of characters.
+     */
+    public static PackedTokens lexAll(String code, int chunkSize) {
+        if (code.length() <= chunkSize) {
+            return new JavaLexer(code).lexAll();
+        }
+        
+        char[] chars = code.toCharArray();
+        List<Chunk> chunks = split(code, chunkSize);
+        chunks.parallelStream()
+            .forEach(chunk -> chunk.lex(code, chars, JavaLexer.LineState.NORMAL));
+        
+        PackedTokens.Builder builder = new PackedTokens.Builder(code);
+        JavaLexer.LineState state = JavaLexer.LineState.NORMAL;
+        for (Chunk chunk: chunks) {
+            if (chunk.entryState != state) {
+                chunk.lex(code, chars, state);
+            }
+            
+            builder.addAll(chunk.tokens);
+            state = chunk.exitState;
+        }
+        
+        return builder.build();
+    }
+    
+    /**
+     * Splits the code into chunks of at least the given size, each of which
+     * ends just after a newline (or at the end of the code).
+     */
+    private static List<Chunk> split(String code, int chunkSize) {
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < code.length()) {
+            int end = code.indexOf('\n', Math.min(start + chunkSize, code.length()) - 1);
+            end = (end == -1) ? code.length() : end + 1;
+            
+            chunks.add(new Chunk(start, end));
+            start = end;
+        }
+        
+        return chunks;
+    }
+}
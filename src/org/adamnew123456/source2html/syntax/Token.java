@@ -5,32 +5,75 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * A Token is some chunk of code, with a particular interpretation built up by 
+ * A Token is some chunk of code, with a particular interpretation built up by
  * the lexer
+ *
+ * Tokens don't hold onto their own copy of the code. Instead, they refer to
+ * a range of the source that they were lexed from, which all the tokens
+ * from that source share.
  */
 public class Token {
-    private String chunk;
+    private CharSequence source;
+    private int start;
+    private int length;
     private TokenType type;
     
     public Token(String chunk, TokenType type) {
-        this.chunk = chunk;
+        this(chunk, 0, chunk.length(), type);
+    }
+    
+    /**
+     * Creates a token out of the given number of characters in the source,
+     * beginning at the start offset.
+     */
+    public Token(CharSequence source, int start, int length, TokenType type) {
+        if (start < 0 || length < 0 || start + length > source.length()) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Token [%d, +%d) outside of source of %d",
+                            start, length, source.length()));
+        }
+        
+        this.source = source;
+        this.start = start;
+        this.length = length;
         this.type = type;
     }
     
     @Override
     public boolean equals(Object other) {
-        if (other instanceof Token) {
-            return ((Token)other).chunk.equals(chunk) && ((Token)other).type == type;
-        } else {
+        if (!(other instanceof Token)) {
             return false;
         }
+        
+        Token token = (Token)other;
+        if (token.type != type || token.length != length) {
+            return false;
+        }
+        
+        for (int i = 0; i < length; i++) {
+            if (token.charAt(i) != charAt(i)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    @Override
+    public int hashCode() {
+        int hash = type.hashCode();
+        for (int i = 0; i < length; i++) {
+            hash = hash * 31 + charAt(i);
+        }
+        
+        return hash;
     }
     
     @Override
     public String toString() {
-        return String.format("Token[%s:%d] `%s`", type, chunk.length(), escapedChunk());
+        return String.format("Token[%s:%d] `%s`", type, length, escapedChunk());
     }
- 
+    
     /**
      * Returns the content of the token, but with whitespace escaped.
      */
@@ -43,10 +86,47 @@ public class Token {
     }
     
     /**
-     * Returns the raw contents of the token.
+     * Returns the raw contents of the token. This copies the contents out of
+     * the source, so prefer reading the source range directly when possible.
      */
     public String getChunk() {
-        return chunk;
+        return source.subSequence(start, start + length).toString();
+    }
+    
+    /**
+     * Returns the source that this token was lexed from.
+     */
+    public CharSequence getSource() {
+        return source;
+    }
+    
+    /**
+     * Returns the offset in the source where this token starts.
+     */
+    public int getStart() {
+        return start;
+    }
+    
+    /**
+     * Returns the number of characters in this token.
+     */
+    public int getLength() {
+        return length;
+    }
+    
+    /**
+     * Returns the character at the given index, counting from the start of
+     * the token.
+     */
+    public char charAt(int index) {
+        return source.charAt(start + index);
+    }
+    
+    /**
+     * Whether the last character of this token is a newline.
+     */
+    public boolean endsWithNewline() {
+        return length > 0 && charAt(length - 1) == '\n';
     }
     
     /**
@@ -58,26 +138,30 @@ public class Token {
     
     /**
      * Splits this Token into multiple tokens which respect line boundaries,
-     * while keeping newlines at the end of each line.
+     * while keeping newlines at the end of each line. The new tokens share
+     * this token's source.
      */
     public List<Token> splitLines() {
-        if (!chunk.contains("\n") || chunk.equals("\n")) {
-            return Arrays.asList(new Token[] { this });
-        }
+        int end = start + length;
+        int lineStart = start;
+        List<Token> out = null;
         
-        List<Token> out = new ArrayList<Token>();
-        String[] lines = chunk.split("\n");
-        int idx = 0;
-        for (String line: lines) {
-            if (idx < lines.length - 1) {
-                out.add(new Token(line + "\n", type));
-            } else {
-                out.add(new Token(line, type));
+        for (int i = start; i < end - 1; i++) {
+            if (source.charAt(i) == '\n') {
+                if (out == null) {
+                    out = new ArrayList<Token>();
+                }
+                
+                out.add(new Token(source, lineStart, i + 1 - lineStart, type));
+                lineStart = i + 1;
             }
-            
-            idx++;
         }
         
+        if (out == null) {
+            return Arrays.asList(new Token[] { this });
+        }
+        
+        out.add(new Token(source, lineStart, end - lineStart, type));
         return out;
     }
 }
@@ -0,0 +1,223 @@
+package org.adamnew123456.source2html.syntax.dfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A CharSet is an immutable set of characters, stored as a sorted list of
+ * ranges. Unlike a String of characters, it supports the set operations that
+ * are needed to work out which characters a Regex can tell apart.
+ */
+public final class CharSet {
+    public static final CharSet EMPTY = new CharSet(new int[0]);
+    public static final CharSet ALL = new CharSet(new int[] { 
+        Character.MIN_VALUE, Character.MAX_VALUE 
+    });
+    
+    /*
+     * Pairs of inclusive [low, high] bounds. The ranges are sorted, and never
+     * overlap or touch each other, so that equal sets have equal arrays.
+     */
+    private final int[] ranges;
+    
+    private CharSet(int[] ranges) {
+        this.ranges = ranges;
+    }
+    
+    /**
+     * Creates a set out of every character in the given String.
+     */
+    public static CharSet of(String chars) {
+        int[] ranges = new int[chars.length() * 2];
+        for (int i = 0; i < chars.length(); i++) {
+            ranges[i * 2] = chars.charAt(i);
+            ranges[i * 2 + 1] = chars.charAt(i);
+        }
+        
+        return normalize(ranges);
+    }
+    
+    /**
+     * Creates a set out of every character between low and high, inclusive.
+     */
+    public static CharSet range(char low, char high) {
+        if (low > high) {
+            return EMPTY;
+        }
+        
+        return new CharSet(new int[] { low, high });
+    }
+    
+    /**
+     * Sorts and merges a list of possibly overlapping ranges.
+     */
+    private static CharSet normalize(int[] unsorted) {
+        int count = unsorted.length / 2;
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++) {
+            packed[i] = ((long)unsorted[i * 2] << 32) | unsorted[i * 2 + 1];
+        }
+        
+        Arrays.sort(packed);
+        
+        int[] merged = new int[count * 2];
+        int size = 0;
+        for (long range: packed) {
+            int low = (int)(range >>> 32);
+            int high = (int)range;
+            
+            if (size > 0 && low <= merged[size - 1] + 1) {
+                merged[size - 1] = Math.max(merged[size - 1], high);
+            } else {
+                merged[size++] = low;
+                merged[size++] = high;
+            }
+        }
+        
+        return new CharSet(Arrays.copyOf(merged, size));
+    }
+    
+    /**
+     * Returns a set containing the characters in either set.
+     */
+    public CharSet union(CharSet other) {
+        int[] both = Arrays.copyOf(ranges, ranges.length + other.ranges.length);
+        System.arraycopy(other.ranges, 0, both, ranges.length, other.ranges.length);
+        return normalize(both);
+    }
+    
+    /**
+     * Returns a set containing the characters in both sets.
+     */
+    public CharSet intersect(CharSet other) {
+        List<Integer> result = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < ranges.length && j < other.ranges.length) {
+            int low = Math.max(ranges[i], other.ranges[j]);
+            int high = Math.min(ranges[i + 1], other.ranges[j + 1]);
+            if (low <= high) {
+                result.add(low);
+                result.add(high);
+            }
+            
+            if (ranges[i + 1] < other.ranges[j + 1]) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+        
+        return new CharSet(result.stream().mapToInt(Integer::intValue).toArray());
+    }
+    
+    /**
+     * Returns a set containing every character that isn't in this set.
+     */
+    public CharSet complement() {
+        List<Integer> result = new ArrayList<>();
+        int next = Character.MIN_VALUE;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result.add(next);
+                result.add(ranges[i] - 1);
+            }
+            
+            next = ranges[i + 1] + 1;
+        }
+        
+        if (next <= Character.MAX_VALUE) {
+            result.add(next);
+            result.add((int)Character.MAX_VALUE);
+        }
+        
+        return new CharSet(result.stream().mapToInt(Integer::intValue).toArray());
+    }
+    
+    /**
+     * Returns a set containing the characters in this set but not the other.
+     */
+    public CharSet minus(CharSet other) {
+        return intersect(other.complement());
+    }
+    
+    /**
+     * Whether or not the given character is in this set.
+     */
+    public boolean contains(char c) {
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (c < ranges[middle * 2]) {
+                high = middle - 1;
+            } else if (c > ranges[middle * 2 + 1]) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    public boolean isEmpty() {
+        return ranges.length == 0;
+    }
+    
+    /**
+     * Splits the characters into intervals, such that each interval is
+     * entirely inside or outside of every one of the sets. Returns where
+     * each interval starts, followed by the end of the last interval.
+     */
+    static int[] boundaries(List<CharSet> sets) {
+        TreeSet<Integer> bounds = new TreeSet<>();
+        bounds.add((int)Character.MIN_VALUE);
+        bounds.add(Character.MAX_VALUE + 1);
+        for (CharSet set: sets) {
+            for (int i = 0; i < set.ranges.length; i += 2) {
+                bounds.add(set.ranges[i]);
+                bounds.add(set.ranges[i + 1] + 1);
+            }
+        }
+        
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+    
+    /**
+     * Returns the bounds of each range in the set, as pairs of inclusive
+     * [low, high] bounds.
+     */
+    int[] getRanges() {
+        return ranges;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof CharSet) {
+            return Arrays.equals(((CharSet)other).ranges, ranges);
+        } else {
+            return false;
+        }
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < ranges.length; i += 2) {
+            builder.append(String.format("\\u%04x", ranges[i]));
+            if (ranges[i + 1] != ranges[i]) {
+                builder.append(String.format("-\\u%04x", ranges[i + 1]));
+            }
+        }
+        
+        return builder.append("]").toString();
+    }
+}
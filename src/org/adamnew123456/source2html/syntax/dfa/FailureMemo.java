@@ -0,0 +1,94 @@
+package org.adamnew123456.source2html.syntax.dfa;
+
+import java.util.Arrays;
+
+/**
+ * A FailureMemo remembers the places where a StateTable has already scanned
+ * and come up empty, so that later scans can give up as soon as they get
+ * there.
+ * 
+ * Without this, an unterminated block comment or string is scanned all the
+ * way to its end once for every token that starts inside of it, which takes
+ * time quadratic in the length of the input. Since the table is
+ * deterministic, being in the same state at the same position always ends
+ * the same way, so each (state, position) pair only ever has to fail once.
+ * 
+ * A FailureMemo is only good for the stream that it was used with.
+ */
+public class FailureMemo {
+    /*
+     * Each state gets a bitset of the positions where it has failed, which
+     * is only created the first time that state fails somewhere. The bitsets
+     * start at firstWord, since nothing before that will be
+     * asked about again.
+     */
+    private long[][] failures;
+    private int firstWord;
+    
+    // How far behind the scans the bitsets have to fall before they're cut 
+    // down, so that they aren't copied for every scan
+    private static final int SLACK_WORDS = 1024;
+    
+    FailureMemo(int stateCount) {
+        failures = new long[stateCount][];
+        firstWord = 0;
+    }
+    
+    /**
+     * Throws away what's known about the positions before the given one,
+     * which no scan is going to start from again. This keeps the memo from
+     * growing with the length of the stream.
+     */
+    void forgetBefore(int position) {
+        int word = position >>> 6;
+        int drop = word - firstWord;
+        if (drop < SLACK_WORDS) {
+            return;
+        }
+        
+        for (int state = 0; state < failures.length; state++) {
+            long[] bits = failures[state];
+            if (bits == null) continue;
+            
+            if (bits.length <= drop) {
+                failures[state] = null;
+            } else {
+                failures[state] = Arrays.copyOfRange(bits, drop, bits.length);
+            }
+        }
+        
+        firstWord = word;
+    }
+    
+    /**
+     * Whether a scan which was in the given state at the given position has
+     * already failed to find any match.
+     */
+    boolean hasFailed(int state, int position) {
+        long[] bits = failures[state];
+        int word = (position >>> 6) - firstWord;
+        return bits != null && word >= 0 && word < bits.length 
+                && (bits[word] & (1L << position)) != 0;
+    }
+    
+    /**
+     * Records that a scan in the given state at the given position can't
+     * find a match.
+     */
+    void markFailed(int state, int position) {
+        long[] bits = failures[state];
+        int word = (position >>> 6) - firstWord;
+        if (word < 0) {
+            return;
+        }
+        
+        if (bits == null) {
+            bits = new long[word + 1];
+        } else if (word >= bits.length) {
+            bits = Arrays.copyOf(bits, Math.max(bits.length * 2, word + 1));
+        }
+        
+        bits[word] |= 1L << position;
+        failures[state] = bits;
+    }
+}
@@ -0,0 +1,470 @@
+package org.adamnew123456.source2html.syntax.dfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * A Regex is an immutable regular expression, which is what parsers are
+ * compiled into before they are turned into a StateTable.
+ *
+ * Besides the usual sequences, alternatives and repetitions, a Regex can also
+ * be intersected with or subtracted from another Regex. Those are needed to
+ * describe things like "everything up to the end of the comment", which the
+ * parsers express using lookahead.
+ *
+ * Regexes are always built through the static methods below, which simplify
+ * them as they go. This matters because StateTable builds its states out of
+ * the derivatives of a Regex, and two derivatives are only recognized as the
+ * same state if they simplify to the same Regex.
+ */
+public abstract class Regex {
+    /** Matches nothing at all. */
+    public static final Regex NOTHING = new Nothing();
+    
+    /** Matches only the empty string. */
+    public static final Regex EMPTY = new Empty();
+    
+    /** Matches any string. */
+    public static final Regex ANYTHING = new Star(new Chars(CharSet.ALL));
+    
+    /*
+     * This is a canonical rendering of the Regex, which is used for both
+     * equality and ordering.
+     */
+    private final String key;
+    private final boolean nullable;
+    
+    private Regex(String key, boolean nullable) {
+        this.key = key;
+        this.nullable = nullable;
+    }
+    
+    /**
+     * Whether or not this Regex matches the empty string.
+     */
+    public boolean isNullable() {
+        return nullable;
+    }
+    
+    /**
+     * Returns a Regex which matches whatever this Regex would match after
+     * reading the given character.
+     */
+    public abstract Regex derivative(char c);
+    
+    /**
+     * Returns the set of characters this Regex matches, if it only ever
+     * matches a single character.
+     */
+    public Optional<CharSet> asCharSet() {
+        return Optional.empty();
+    }
+    
+    /**
+     * Returns the characters which this Regex can start with.
+     */
+    public CharSet firstChars() {
+        return charsWhere(next -> next != NOTHING);
+    }
+    
+    /**
+     * Returns the characters which this Regex matches on their own, and
+     * which it can't match anything longer than - that is, the characters
+     * that it has to stop right after.
+     */
+    public CharSet soleChars() {
+        return charsWhere(next -> next.equals(EMPTY));
+    }
+    
+    /**
+     * Returns the characters whose derivatives pass the given test.
+     */
+    private CharSet charsWhere(Predicate<Regex> test) {
+        List<CharSet> sets = new ArrayList<>();
+        collectCharSets(sets);
+        
+        int[] bounds = CharSet.boundaries(sets);
+        CharSet result = CharSet.EMPTY;
+        for (int i = 0; i < bounds.length - 1; i++) {
+            char low = (char)bounds[i];
+            if (test.test(derivative(low))) {
+                result = result.union(CharSet.range(low, (char)(bounds[i + 1] - 1)));
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Adds every CharSet used by this Regex onto the list.
+     */
+    abstract void collectCharSets(List<CharSet> sets);
+    
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof Regex) {
+            return ((Regex)other).key.equals(key);
+        } else {
+            return false;
+        }
+    }
+    
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+    
+    @Override
+    public String toString() {
+        return key;
+    }
+    
+    /**
+     * Matches a single character from the given set.
+     */
+    public static Regex chars(CharSet set) {
+        if (set.isEmpty()) {
+            return NOTHING;
+        } else {
+            return new Chars(set);
+        }
+    }
+    
+    /**
+     * Matches each of the given Regexes, one after the other.
+     */
+    public static Regex concat(Regex... parts) {
+        Regex result = EMPTY;
+        for (int i = parts.length - 1; i >= 0; i--) {
+            result = concat(parts[i], result);
+        }
+        
+        return result;
+    }
+    
+    private static Regex concat(Regex first, Regex second) {
+        if (first == NOTHING || second == NOTHING) {
+            return NOTHING;
+        } else if (first == EMPTY) {
+            return second;
+        } else if (second == EMPTY) {
+            return first;
+        } else if (first instanceof Concat) {
+            // Keep sequences leaning to the right, so that equal sequences
+            // are always built the same way
+            Concat inner = (Concat)first;
+            return concat(inner.first, concat(inner.second, second));
+        } else {
+            return new Concat(first, second);
+        }
+    }
+    
+    /**
+     * Matches anything that any of the given Regexes match.
+     */
+    public static Regex union(Regex... options) {
+        TreeMap<String, Regex> members = new TreeMap<>();
+        CharSet chars = CharSet.EMPTY;
+        
+        List<Regex> pending = new ArrayList<>(Arrays.asList(options));
+        while (!pending.isEmpty()) {
+            Regex option = pending.remove(pending.size() - 1);
+            if (option instanceof Union) {
+                pending.addAll(Arrays.asList(((Union)option).options));
+            } else if (option instanceof Chars) {
+                chars = chars.union(((Chars)option).set);
+            } else if (option.equals(ANYTHING)) {
+                return ANYTHING;
+            } else if (option != NOTHING) {
+                members.put(option.key, option);
+            }
+        }
+        
+        if (!chars.isEmpty()) {
+            Regex merged = chars(chars);
+            members.put(merged.key, merged);
+        }
+        
+        if (members.isEmpty()) {
+            return NOTHING;
+        } else if (members.size() == 1) {
+            return members.firstEntry().getValue();
+        } else {
+            return new Union(members.values().toArray(new Regex[0]));
+        }
+    }
+    
+    /**
+     * Matches only what all of the given Regexes match.
+     */
+    public static Regex intersect(Regex... options) {
+        TreeMap<String, Regex> members = new TreeMap<>();
+        CharSet chars = CharSet.ALL;
+        boolean hasChars = false;
+        
+        List<Regex> pending = new ArrayList<>(Arrays.asList(options));
+        while (!pending.isEmpty()) {
+            Regex option = pending.remove(pending.size() - 1);
+            if (option instanceof Intersection) {
+                pending.addAll(Arrays.asList(((Intersection)option).options));
+            } else if (option instanceof Chars) {
+                chars = chars.intersect(((Chars)option).set);
+                hasChars = true;
+            } else if (option == NOTHING) {
+                return NOTHING;
+            } else if (!option.equals(ANYTHING)) {
+                members.put(option.key, option);
+            }
+        }
+        
+        if (hasChars) {
+            Regex merged = chars(chars);
+            if (merged == NOTHING) {
+                return NOTHING;
+            }
+            
+            members.put(merged.key, merged);
+        }
+        
+        if (members.isEmpty()) {
+            return ANYTHING;
+        } else if (members.size() == 1) {
+            return members.firstEntry().getValue();
+        } else {
+            return new Intersection(members.values().toArray(new Regex[0]));
+        }
+    }
+    
+    /**
+     * Matches anything that the given Regex doesn't match.
+     */
+    public static Regex complement(Regex inner) {
+        if (inner instanceof Complement) {
+            return ((Complement)inner).inner;
+        } else if (inner == NOTHING) {
+            return ANYTHING;
+        } else if (inner.equals(ANYTHING)) {
+            return NOTHING;
+        } else {
+            return new Complement(inner);
+        }
+    }
+    
+    /**
+     * Matches anything that the first Regex matches, but the second doesn't.
+     */
+    public static Regex minus(Regex included, Regex excluded) {
+        return intersect(included, complement(excluded));
+    }
+    
+    /**
+     * Matches the given Regex any number of times, including zero.
+     */
+    public static Regex star(Regex inner) {
+        if (inner == NOTHING || inner == EMPTY) {
+            return EMPTY;
+        } else if (inner instanceof Star) {
+            return inner;
+        } else {
+            return new Star(inner);
+        }
+    }
+    
+    /**
+     * Matches the given Regex, or the empty string.
+     */
+    public static Regex optional(Regex inner) {
+        return union(inner, EMPTY);
+    }
+    
+    /**
+     * Renders a list of Regexes, separated by the given operator.
+     */
+    private static String join(String operator, Regex[] parts) {
+        StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                builder.append(operator);
+            }
+            
+            builder.append(parts[i].key);
+        }
+        
+        return builder.append(")").toString();
+    }
+    
+    private static class Nothing extends Regex {
+        Nothing() {
+            super("{}", false);
+        }
+        
+        @Override
+        public Regex derivative(char c) {
+            return NOTHING;
+        }
+        
+        @Override
+        void collectCharSets(List<CharSet> sets) {
+        }
+    }
+    
+    private static class Empty extends Regex {
+        Empty() {
+            super("()", true);
+        }
+        
+        @Override
+        public Regex derivative(char c) {
+            return NOTHING;
+        }
+        
+        @Override
+        void collectCharSets(List<CharSet> sets) {
+        }
+    }
+    
+    private static class Chars extends Regex {
+        final CharSet set;
+        
+        Chars(CharSet set) {
+            super(set.toString(), false);
+            this.set = set;
+        }
+        
+        @Override
+        public Optional<CharSet> asCharSet() {
+            return Optional.of(set);
+        }
+        
+        @Override
+        public Regex derivative(char c) {
+            if (set.contains(c)) {
+                return EMPTY;
+            } else {
+                return NOTHING;
+            }
+        }
+        
+        @Override
+        void collectCharSets(List<CharSet> sets) {
+            sets.add(set);
+        }
+    }
+    
+    private static class Concat extends Regex {
+        final Regex first;
+        final Regex second;
+        
+        Concat(Regex first, Regex second) {
+            super(first.key + second.key, first.isNullable() && second.isNullable());
+            this.first = first;
+            this.second = second;
+        }
+        
+        @Override
+        public Regex derivative(char c) {
+            Regex result = concat(first.derivative(c), second);
+            if (first.isNullable()) {
+                result = union(result, second.derivative(c));
+            }
+            
+            return result;
+        }
+        
+        @Override
+        void collectCharSets(List<CharSet> sets) {
+            first.collectCharSets(sets);
+            second.collectCharSets(sets);
+        }
+    }
+    
+    private static class Union extends Regex {
+        final Regex[] options;
+        
+        Union(Regex[] options) {
+            super(join("|", options),
+                  Arrays.stream(options).anyMatch(Regex::isNullable));
+            this.options = options;
+        }
+        
+        @Override
+        public Regex derivative(char c) {
+            return union(Arrays.stream(options)
+                    .map(option -> option.derivative(c))
+                    .toArray(Regex[]::new));
+        }
+        
+        @Override
+        void collectCharSets(List<CharSet> sets) {
+            for (Regex option: options) {
+                option.collectCharSets(sets);
+            }
+        }
+    }
+    
+    private static class Intersection extends Regex {
+        final Regex[] options;
+        
+        Intersection(Regex[] options) {
+            super(join("&", options),
+                  Arrays.stream(options).allMatch(Regex::isNullable));
+            this.options = options;
+        }
+        
+        @Override
+        public Regex derivative(char c) {
+            return intersect(Arrays.stream(options)
+                    .map(option -> option.derivative(c))
+                    .toArray(Regex[]::new));
+        }
+        
+        @Override
+        void collectCharSets(List<CharSet> sets) {
+            for (Regex option: options) {
+                option.collectCharSets(sets);
+            }
+        }
+    }
+    
+    private static class Complement extends Regex {
+        final Regex inner;
+        
+        Complement(Regex inner) {
+            super("~(" + inner.key + ")", !inner.isNullable());
+            this.inner = inner;
+        }
+        
+        @Override
+        public Regex derivative(char c) {
+            return complement(inner.derivative(c));
+        }
+        
+        @Override
+        void collectCharSets(List<CharSet> sets) {
+            inner.collectCharSets(sets);
+        }
+    }
+    
+    private static class Star extends Regex {
+        final Regex inner;
+        
+        Star(Regex inner) {
+            super("(" + inner.key + ")*", true);
+            this.inner = inner;
+        }
+        
+        @Override
+        public Regex derivative(char c) {
+            return concat(inner.derivative(c), this);
+        }
+        
+        @Override
+        void collectCharSets(List<CharSet> sets) {
+            inner.collectCharSets(sets);
+        }
+    }
+}
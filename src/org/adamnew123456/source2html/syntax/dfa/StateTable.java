@@ -0,0 +1,303 @@
+package org.adamnew123456.source2html.syntax.dfa;
+
+import org.adamnew123456.source2html.syntax.parsing.CheckpointStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A StateTable is a deterministic automaton which recognizes a list of rules,
+ * each of which is a Regex. It is built once, up front, and afterwards it can
+ * find the next token in a stream with a single forward scan - there is no
+ * backtracking, aside from going back to the end of the longest match once
+ * the scan is over.
+ *
+ * When more than one rule matches, the longest match wins, and rules which
+ * come first in the list win ties.
+ *
+ * The states are built using Brzozowski derivatives: each state is the list
+ * of what every rule has left to match, and the transitions out of a state
+ * are the derivatives of those rules.
+ */
+public class StateTable {
+    /**
+     * What match returns when none of the rules match.
+     */
+    public static final long NO_MATCH = -1;
+    
+    // Where the transitions go once none of the rules can match anymore
+    private static final int DEAD = -1;
+    
+    // Guards against grammars which don't simplify down to a finite table
+    private static final int MAX_STATES = 100000;
+    
+    private final int ruleCount;
+    
+    /*
+     * Characters are grouped into classes, so that the table only needs one
+     * column for each group of characters which the rules can't tell apart.
+     */
+    private final short[] charClasses;
+    private final int classCount;
+    
+    /*
+     * The transition from state s on class c is at s * classCount + c. Each
+     * state accepts the rule at its index in accepts, or DEAD if it doesn't
+     * accept anything.
+     */
+    private final int[] transitions;
+    private final int[] accepts;
+    
+    private StateTable(int ruleCount, short[] charClasses, int classCount,
+            int[] transitions, int[] accepts) {
+        this.ruleCount = ruleCount;
+        this.charClasses = charClasses;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepts = accepts;
+    }
+    
+    /**
+     * Builds a table which recognizes each of the given rules.
+     */
+    public static StateTable compile(Regex... rules) {
+        List<CharSet> sets = new ArrayList<>();
+        for (Regex rule: rules) {
+            rule.collectCharSets(sets);
+        }
+        
+        // Split the characters into the smallest number of classes, such that
+        // each class is entirely inside or outside of every set
+        int[] bounds = CharSet.boundaries(sets);
+        
+        short[] charClasses = new short[Character.MAX_VALUE + 1];
+        Map<String, Integer> classIds = new HashMap<>();
+        List<Character> representatives = new ArrayList<>();
+        
+        Integer low = null;
+        for (int high: bounds) {
+            if (low != null) {
+                char first = (char)(int)low;
+                StringBuilder membership = new StringBuilder();
+                for (CharSet set: sets) {
+                    membership.append(set.contains(first) ? '1' : '0');
+                }
+                
+                Integer classId = classIds.get(membership.toString());
+                if (classId == null) {
+                    classId = representatives.size();
+                    classIds.put(membership.toString(), classId);
+                    representatives.add(first);
+                }
+                
+                Arrays.fill(charClasses, low, high, (short)(int)classId);
+            }
+            
+            low = high;
+        }
+        
+        int classCount = representatives.size();
+        
+        // Explore every state reachable from the rules themselves
+        List<Regex[]> states = new ArrayList<>();
+        Map<List<Regex>, Integer> stateIds = new HashMap<>();
+        List<int[]> rows = new ArrayList<>();
+        
+        states.add(rules.clone());
+        stateIds.put(Arrays.asList(rules), 0);
+        
+        for (int state = 0; state < states.size(); state++) {
+            Regex[] current = states.get(state);
+            int[] row = new int[classCount];
+            
+            for (int charClass = 0; charClass < classCount; charClass++) {
+                char c = representatives.get(charClass);
+                Regex[] next = new Regex[current.length];
+                boolean isDead = true;
+                for (int rule = 0; rule < current.length; rule++) {
+                    next[rule] = current[rule].derivative(c);
+                    if (next[rule] != Regex.NOTHING) {
+                        isDead = false;
+                    }
+                }
+                
+                if (isDead) {
+                    row[charClass] = DEAD;
+                    continue;
+                }
+                
+                Integer nextId = stateIds.get(Arrays.asList(next));
+                if (nextId == null) {
+                    if (states.size() == MAX_STATES) {
+                        throw new IllegalStateException(
+                                "Grammar needs more than " + MAX_STATES + " states");
+                    }
+                    
+                    nextId = states.size();
+                    states.add(next);
+                    stateIds.put(Arrays.asList(next), nextId);
+                }
+                
+                row[charClass] = nextId;
+            }
+            
+            rows.add(row);
+        }
+        
+        int[] accepts = new int[states.size()];
+        for (int state = 0; state < states.size(); state++) {
+            accepts[state] = DEAD;
+            Regex[] current = states.get(state);
+            for (int rule = 0; rule < current.length; rule++) {
+                if (current[rule].isNullable()) {
+                    accepts[state] = rule;
+                    break;
+                }
+            }
+        }
+        
+        // Some states can never reach an accepting state, even though the
+        // Regexes they came from didn't simplify all the way down to NOTHING.
+        // Those are dead too, and leaving them in would make match scan all
+        // the way to the end of the stream for nothing.
+        boolean[] isLive = new boolean[states.size()];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int state = 0; state < states.size(); state++) {
+                if (isLive[state]) continue;
+                
+                boolean live = accepts[state] != DEAD;
+                for (int next: rows.get(state)) {
+                    if (next != DEAD && isLive[next]) {
+                        live = true;
+                    }
+                }
+                
+                if (live) {
+                    isLive[state] = true;
+                    changed = true;
+                }
+            }
+        }
+        
+        int[] transitions = new int[states.size() * classCount];
+        for (int state = 0; state < states.size(); state++) {
+            int[] row = rows.get(state);
+            for (int charClass = 0; charClass < classCount; charClass++) {
+                int next = row[charClass];
+                if (next != DEAD && !isLive[next]) {
+                    next = DEAD;
+                }
+                
+                transitions[state * classCount + charClass] = next;
+            }
+        }
+        
+        return new StateTable(rules.length, charClasses, classCount,
+                transitions, accepts);
+    }
+    
+    /**
+     * Finds the longest match of any rule at the current position of the
+     * stream, without moving the stream. Returns NO_MATCH if no rule matches,
+     * and otherwise a value which can be unpacked with matchRule and
+     * matchLength.
+     */
+    public long match(CheckpointStream stream) {
+        return match(stream, null);
+    }
+    
+    /**
+     * Like match, but uses (and updates) the given memo so that the scan
+     * doesn't go over ground that earlier scans of this stream have already
+     * failed on. Lexing a whole stream this way takes linear time, no matter
+     * how many unterminated tokens it has.
+     */
+    public long match(CheckpointStream stream, FailureMemo memo) {
+        int start = stream.position();
+        if (memo != null) {
+            memo.forgetBefore(start);
+        }
+        
+        int state = 0;
+        int lastRule = accepts[state];
+        int lastLength = 0;
+        int lastState = state;
+        
+        int position = start;
+        while (stream.hasCharAt(position)) {
+            state = transitions[state * classCount + charClasses[stream.charAt(position)]];
+            if (state == DEAD || (memo != null && memo.hasFailed(state, position + 1))) {
+                break;
+            }
+            
+            position++;
+            if (accepts[state] != DEAD) {
+                lastRule = accepts[state];
+                lastLength = position - start;
+                lastState = state;
+            }
+        }
+        
+        if (memo != null) {
+            markFailures(stream, memo, lastState, start + lastLength, position);
+        }
+        
+        if (lastRule == DEAD) {
+            return NO_MATCH;
+        } else {
+            return ((long)lastRule << 32) | lastLength;
+        }
+    }
+    
+    /**
+     * Goes back over the part of a scan which came after its last match,
+     * and records every state it went through there as a failure.
+     */
+    private void markFailures(CheckpointStream stream, FailureMemo memo, 
+            int state, int from, int to) {
+        for (int position = from; position < to; position++) {
+            state = transitions[state * classCount + charClasses[stream.charAt(position)]];
+            memo.markFailed(state, position + 1);
+        }
+    }
+    
+    /**
+     * Creates a memo which can be used to match against a single stream.
+     */
+    public FailureMemo newMemo() {
+        return new FailureMemo(accepts.length);
+    }
+    
+    /**
+     * Returns the index of the rule which produced the given match.
+     */
+    public static int matchRule(long match) {
+        return (int)(match >>> 32);
+    }
+    
+    /**
+     * Returns the length of the given match.
+     */
+    public static int matchLength(long match) {
+        return (int)match;
+    }
+    
+    /**
+     * Returns the number of rules this table recognizes.
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+    
+    /**
+     * Returns the number of states in this table.
+     */
+    public int getStateCount() {
+        return accepts.length;
+    }
+}
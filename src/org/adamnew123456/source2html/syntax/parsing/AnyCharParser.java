@@ -1,17 +1,24 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
-import java.util.Optional;
+import org.adamnew123456.source2html.syntax.dfa.CharSet;
+import org.adamnew123456.source2html.syntax.dfa.Regex;
 
 /**
  * The single parser parses a single character (of any kind) or fails.
  */
-public class AnyCharParser implements Parser {
+public class AnyCharParser extends MatchingParser {
     @Override
-    public Optional<String> tryParse(CheckpointStream stream) {
-        if (stream.size() == 0) {
-            return Optional.empty();
+    public int tryMatch(CheckpointStream stream) {
+        if (stream.isEmpty()) {
+            return NO_MATCH;
         } else {
-            return Optional.of(String.valueOf(stream.get()));
+            stream.getChar();
+            return 1;
         }
     }
+    
+    @Override
+    public Regex toRegex() {
+        return Regex.chars(CharSet.ALL);
+    }
 }
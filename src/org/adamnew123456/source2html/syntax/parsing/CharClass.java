@@ -0,0 +1,136 @@
+package org.adamnew123456.source2html.syntax.parsing;
+
+import org.adamnew123456.source2html.syntax.dfa.CharSet;
+
+/**
+ * A CharClass is an immutable set of characters, which is built to be tested
+ * against quickly. ASCII characters are looked up in a bitmask, and anything
+ * else falls back to searching the ranges of a CharSet.
+ * 
+ * Classes are put together out of strings of characters and ranges, using
+ * the set operations, so something like [a-zA-Z_$] is:
+ * 
+ *     CharClass.range('a', 'z')
+ *         .union(CharClass.range('A', 'Z'))
+ *         .union(CharClass.of("_$"))
+ */
+public final class CharClass {
+    public static final CharClass NONE = new CharClass(CharSet.EMPTY);
+    public static final CharClass ALL = new CharClass(CharSet.ALL);
+    
+    private static final int ASCII_SIZE = 128;
+    
+    // Bits 0-63 are in the first long, and bits 64-127 are in the second
+    private final long asciiLow;
+    private final long asciiHigh;
+    private final boolean hasNonAscii;
+    private final CharSet set;
+    
+    private CharClass(CharSet set) {
+        long low = 0;
+        long high = 0;
+        for (char c = 0; c < ASCII_SIZE; c++) {
+            if (set.contains(c)) {
+                if (c < 64) {
+                    low |= 1L << c;
+                } else {
+                    high |= 1L << (c - 64);
+                }
+            }
+        }
+        
+        this.asciiLow = low;
+        this.asciiHigh = high;
+        this.hasNonAscii = !set.minus(CharSet.range((char)0, (char)(ASCII_SIZE - 1))).isEmpty();
+        this.set = set;
+    }
+    
+    /**
+     * Creates a class out of every character in the given String.
+     */
+    public static CharClass of(String chars) {
+        return new CharClass(CharSet.of(chars));
+    }
+    
+    /**
+     * Creates a class out of every character between low and high, inclusive.
+     */
+    public static CharClass range(char low, char high) {
+        return new CharClass(CharSet.range(low, high));
+    }
+    
+    /**
+     * Creates a class with the same characters as the given CharSet.
+     */
+    public static CharClass of(CharSet set) {
+        return new CharClass(set);
+    }
+    
+    /**
+     * Returns a class containing the characters in either class.
+     */
+    public CharClass union(CharClass other) {
+        return new CharClass(set.union(other.set));
+    }
+    
+    /**
+     * Returns a class containing the characters in both classes.
+     */
+    public CharClass intersect(CharClass other) {
+        return new CharClass(set.intersect(other.set));
+    }
+    
+    /**
+     * Returns a class containing the characters in this class but not the
+     * other.
+     */
+    public CharClass minus(CharClass other) {
+        return new CharClass(set.minus(other.set));
+    }
+    
+    /**
+     * Returns a class containing every character that isn't in this class.
+     */
+    public CharClass negate() {
+        return new CharClass(set.complement());
+    }
+    
+    /**
+     * Whether or not the given character is in this class.
+     */
+    public boolean contains(char c) {
+        if (c < 64) {
+            return (asciiLow & (1L << c)) != 0;
+        } else if (c < ASCII_SIZE) {
+            return (asciiHigh & (1L << (c - 64))) != 0;
+        } else {
+            return hasNonAscii && set.contains(c);
+        }
+    }
+    
+    /**
+     * Returns the characters of this class as a CharSet.
+     */
+    public CharSet toCharSet() {
+        return set;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof CharClass) {
+            return ((CharClass)other).set.equals(set);
+        } else {
+            return false;
+        }
+    }
+    
+    @Override
+    public int hashCode() {
+        return set.hashCode();
+    }
+    
+    @Override
+    public String toString() {
+        return set.toString();
+    }
+}
@@ -1,86 +1,81 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Optional;
+import java.util.NoSuchElementException;
 
 /**
- * A checkpoint stream is a Deque which has the ability to save parts of its
- * input, and restore them. This is important for parsing, since there are times
- * when a stream has to be reverted, even after characters are read (for example,
- * in a Sequence parser where only a few parsers succeeded, but one of them failed).
- * 
+ * A checkpoint stream is a cursor over a buffer of characters, which has the
+ * ability to save its position, and go back to it later. This is important for
+ * parsing, since there are times when a stream has to be reverted, even after
+ * characters are read (for example, in a Sequence parser where only a few
+ * parsers succeeded, but one of them failed).
+ *
+ * Reading from the stream never removes anything from the buffer - it just
+ * moves the cursor forward. That means that a checkpoint is nothing more than
+ * a saved cursor position, and restoring it is nothing more than moving the
+ * cursor back to that position.
+ *
  * There is a distinction between so-called strong checkpoints and weak checkpoints.
- * Strong checkpoints guarantee that the state of the stream is restored to a 
+ * Strong checkpoints guarantee that the state of the stream is restored to a
  * particular condition whenever they are used - that is, you should use them when
  * you want to guarantee that a stream is not modified.
- * 
+ *
  * Strong checkpoints are returned by the strongCheckpoint() method, and you should
  * always check if they need to be restored (via needsRestore()) before you call
  * restore() on the stream.
- * 
+ *
  * Weak checkpoints are used when you want the stream to change if a parse succeeds,
  * or if you want the stream not to change when it fails. Weak checkpoints are used
  * internally, and you cannot get any access to them from the outside.
- * 
+ *
  * There are four extra methods:
- * 
+ *
  *  - checkpoint() creates a weak checkpoint.
  *  - strongCheckpoint() creates a strong checkpoint
  *  - restore() causes stream to be restored back to the time when checkpoint()
  *    was last called. It also cleans up the most recent checkpoint.
  *  - commit() cleans up the most recent checkpoint without applying it.
- *    
- * Note that, since checkpoints are designed for reading, any operations 
- * which add to the stream will invalidate all checkpoints  
+ *
+ * Note that, since checkpoints are designed for reading, any operations
+ * which add to the stream will invalidate all checkpoints
+ *
+ * A stream can also read from a Reader, in which case it only holds onto a
+ * window of the input. Characters are read in as they are needed, and the
+ * characters behind the window are thrown away once neither the cursor nor
+ * any checkpoint can get back to them. Positions still count from the start
+ * of the input, but asking for a character that has been thrown away is an
+ * error.
+ * 
+ * The window has to reach back to the earliest checkpoint, so it is only
+ * as small as the furthest that anything reads while a checkpoint is held.
+ * A scan which goes a long way before it fails keeps everything it passed
+ * over, and the window doesn't shrink back afterwards - it is reused at the
+ * size it grew to.
  */
 public class CheckpointStream implements Iterable<Character> {
-    private class Checkpoint implements StrongCheckpoint {
-        private Deque<Character> checkpoint; 
-        private boolean isStrong;
-        private boolean wasRestored = false;
-        
-        public Checkpoint(boolean strong) {
-            checkpoint = new ArrayDeque<Character>();
-            isStrong = strong;
-        }
-
-        /**
-         * Whether this checkpoint is a strong checkpoint or not.
-         */
-        public boolean isStrong() { 
-            return isStrong; 
-        }
-
-        /**
-         * Adds a new character onto the checkpoint, so that it can be added
-         * back onto the stream if the checkpoint is restored.
-         */
-        public void record(char c) {
-            checkpoint.addFirst(c);
-        }
-
-        /**
-         * Copies the saved characters back onto the head of the stream.
-         */
-        public void restore(Deque<Character> stream) {
-            while (!checkpoint.isEmpty()) {
-                Character elt = checkpoint.removeFirst();
-                stream.addFirst(elt);
-            }
-            
-            wasRestored = true;
-        }
+    /*
+     * Strong checkpoints are handed out as handles, which hold the depth of
+     * their checkpoint on the stack and its serial number. Every strong 
+     * checkpoint gets a new serial, which is stored in the stack too, so a
+     * handle can tell whether its checkpoint is still the one on the stack -
+     * once it has been committed or restored, a later checkpoint at the same
+     * depth has a different serial.
+     * 
+     * Handles never change, so an old one can't be mistaken for a newer 
+     * checkpoint. They are small enough that the JIT can usually keep them
+     * off the heap altogether.
+     */
+    private class Handle implements StrongCheckpoint {
+        private final int depth;
+        private final long serial;
         
-        /*
-         * Useful for strong checkpoints when the checkpoint below the strong one
-         * was restored (and thus the strong checkpoint need not be restored)
-         * but the stream doesn't need the strong checkpoint to do anything.
-         */
-        public void forceRestore() {
-            wasRestored = true;
+        public Handle(int depth, long serial) {
+            this.depth = depth;
+            this.serial = serial;
         }
         
         /**
@@ -88,144 +83,458 @@ public class CheckpointStream implements Iterable<Character> {
          * the stream.
          */
         public boolean needsRestore() {
-            return isStrong() && !wasRestored;
+            return depth < checkpointDepth && checkpointSerials[depth] == serial;
         }
     }
     
-    private Deque<Character> backingStore;
-    private LinkedList<Checkpoint> checkpoints;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_DEPTH = 16;
+    
+    // How much a stream reading from a Reader asks it for at a time
+    private static final int DEFAULT_WINDOW = 8192;
+    
+    // Serial numbers for weak checkpoints, which have no handles
+    private static final long WEAK = 0;
+    
+    /*
+     * The buffer holds the characters from base up to limit. The cursor and
+     * limit are positions in the whole input, so they have to have base
+     * taken off of them before they can be used as indexes into the buffer.
+     * 
+     * The reader is where more characters come from, and is null once it
+     * runs out (or if there never was one).
+     */
+    private char[] buffer;
+    private int base;
+    private int cursor;
+    private int limit;
+    private Reader reader;
+    
+    // Counts changes which add to the stream, which are what invalidate the 
+    // results of a MemoTable
+    private int version;
+    
+    /*
+     * The checkpoint stack is stored as parallel arrays, so that making a
+     * checkpoint costs one entry regardless of how deep the stack is.
+     */
+    private int[] checkpointPositions;
+    private long[] checkpointSerials;
+    private int checkpointDepth;
+    private long lastSerial;
     
     public CheckpointStream() {
-        backingStore = new ArrayDeque<Character>();
-        checkpoints = new LinkedList<Checkpoint>();
+        this(new char[INITIAL_CAPACITY], 0);
     }
     
     /**
-     * Gets the current checkpoint.
+     * Creates a stream which reads over the given text.
      */
-    private Optional<Checkpoint> currentCheckpoint() {
-        if (checkpoints.isEmpty()) {
-            return Optional.empty();
-        } else {
-            return Optional.of(checkpoints.getFirst());
+    public CheckpointStream(CharSequence text) {
+        this(new char[Math.max(text.length(), INITIAL_CAPACITY)], 0);
+        extend(text);
+    }
+    
+    /**
+     * Creates a stream which reads over the first length characters of the
+     * given array. The array is used directly, and not copied.
+     */
+    public CheckpointStream(char[] chars, int length) {
+        buffer = chars;
+        base = 0;
+        cursor = 0;
+        limit = length;
+        reader = null;
+        version = 0;
+        checkpointPositions = new int[INITIAL_DEPTH];
+        checkpointSerials = new long[INITIAL_DEPTH];
+        checkpointDepth = 0;
+        lastSerial = WEAK;
+    }
+    
+    /**
+     * Creates a stream which reads from the given Reader, in chunks of the
+     * default size.
+     */
+    public CheckpointStream(Reader reader) {
+        this(reader, DEFAULT_WINDOW);
+    }
+    
+    /**
+     * Creates a stream which reads from the given Reader, asking for the 
+     * given number of characters at a time. The window only grows past that
+     * size when a checkpoint holds on to more than it.
+     */
+    public CheckpointStream(Reader reader, int window) {
+        this(new char[checkWindow(window)], 0);
+        this.reader = reader;
+    }
+    
+    private static int checkWindow(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
         }
+        
+        return window;
     }
     
     /**
-     * Weak checkpoints save only the characters which
-     * are removed when they are the topmost checkpoint.
+     * Pushes the current position onto the checkpoint stack.
+     */
+    private void push(long serial) {
+        if (checkpointDepth == checkpointPositions.length) {
+            int capacity = checkpointDepth * 2;
+            checkpointPositions = Arrays.copyOf(checkpointPositions, capacity);
+            checkpointSerials = Arrays.copyOf(checkpointSerials, capacity);
+        }
+        
+        checkpointPositions[checkpointDepth] = cursor;
+        checkpointSerials[checkpointDepth] = serial;
+        checkpointDepth++;
+    }
+    
+    /**
+     * Weak checkpoints save the position of the stream, so that a failed parse
+     * can go back to it.
      */
     public void checkpoint() {
-        checkpoints.addFirst(new Checkpoint(false));
+        push(WEAK);
     }
     
     /**
-     * Strong checkpoints save *all* characters which are removed until they are
-     * restored or committed.
+     * Strong checkpoints save the position of the stream, and can be asked if
+     * they still need to be restored. A handle only ever refers to the
+     * checkpoint it was made for, and stops needing a restore once that
+     * checkpoint is committed or restored.
      */
     public StrongCheckpoint strongCheckpoint() {
-        checkpoints.addFirst(new Checkpoint(true));
-        return checkpoints.getFirst();
+        // Serials are longs, so they never wrap around in practice
+        lastSerial++;
+        Handle handle = new Handle(checkpointDepth, lastSerial);
+        push(lastSerial);
+        return handle;
     }
     
     /**
      * Deletes the current checkpoint.
      */
     public void commit() {
-        if (checkpoints.isEmpty()) {
+        if (checkpointDepth == 0) {
             throw new IllegalStateException("Cannot commit with no checkpoints");
         }
         
-        checkpoints.removeFirst();
+        checkpointDepth--;
     }
     
     /**
-     * Restores the content of the checkpoint onto the stream.
+     * Moves the stream back to where it was when the current checkpoint was
+     * made.
      */
     public void restore() {
-        if (checkpoints.isEmpty()) {
+        if (checkpointDepth == 0) {
             throw new IllegalStateException("Cannot restore with no checkpoints");
         }
         
-        Checkpoint checkpoint = currentCheckpoint().get();
-        checkpoints.removeFirst();
-        checkpoint.restore(backingStore);
+        checkpointDepth--;
+        cursor = checkpointPositions[checkpointDepth];
+    }
+    
+    /**
+     * Moves the stream back to where it was when the given strong checkpoint
+     * was made. This is the same as restore(), but fails if the checkpoint
+     * is no longer on the stack, or if it isn't the current checkpoint.
+     */
+    public void restore(StrongCheckpoint checkpoint) {
+        if (!(checkpoint instanceof Handle)) {
+            throw new IllegalArgumentException("Not a checkpoint from a stream: " + checkpoint);
+        }
         
-        // Also, if there are strong checkpoints on top of this, then discard 
-        // them so that they don't double-up their effects
-        while (!checkpoints.isEmpty() && checkpoints.getFirst().isStrong()) {
-            checkpoints.removeFirst().forceRestore();
+        Handle handle = (Handle)checkpoint;
+        if (!handle.needsRestore() || handle.depth != checkpointDepth - 1) {
+            throw new IllegalStateException(
+                    String.format("Strong checkpoint at depth %d is not the current checkpoint",
+                            handle.depth));
         }
+        
+        restore();
     }
     
     /**
      * Returns true if a checkpoint is currently in use.
      */
     public boolean isCheckpointed() {
-        return !checkpoints.isEmpty();
+        return checkpointDepth > 0;
     }
     
     /**
      * Returns true if the stream is empty.
      */
     public boolean isEmpty() {
-        return backingStore.isEmpty();
+        return !hasCharAt(cursor);
     }
-
+    
+    /**
+     * Whether the stream has a character at the given position, which may be
+     * anywhere that position() has been or could go. For a stream that reads
+     * from a Reader, this reads as far as the position if it has to.
+     */
+    public boolean hasCharAt(int position) {
+        return position < limit || (reader != null && readUntil(position));
+    }
+    
+    /**
+     * Reads until the given position is in the window, returning false if
+     * the reader runs out first.
+     */
+    private boolean readUntil(int position) {
+        while (position >= limit) {
+            if (reader == null || !readMore()) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Reads the next chunk from the reader, returning false if there was
+     * nothing left to read.
+     */
+    private boolean readMore() {
+        if (limit - base == buffer.length) {
+            // Throw away whatever neither the cursor nor any checkpoint can
+            // get back to - the checkpoint at the bottom of the stack is the
+            // earliest one
+            int keep = cursor;
+            if (checkpointDepth > 0) {
+                keep = Math.min(keep, checkpointPositions[0]);
+            }
+            
+            if (keep - base >= buffer.length / 2) {
+                System.arraycopy(buffer, keep - base, buffer, 0, limit - keep);
+            } else {
+                char[] expanded = new char[buffer.length * 2];
+                System.arraycopy(buffer, keep - base, expanded, 0, limit - keep);
+                buffer = expanded;
+            }
+            
+            base = keep;
+        }
+        
+        try {
+            int read = reader.read(buffer, limit - base, buffer.length - (limit - base));
+            if (read < 0) {
+                reader = null;
+                return false;
+            }
+            
+            limit += read;
+            return true;
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
+        }
+    }
+    
+    /**
+     * Ensures that the buffer has room for at least the given number of
+     * characters past the end of the stream.
+     */
+    private void reserve(int extra) {
+        if (reader != null) {
+            throw new IllegalStateException(
+                    "Cannot add to a stream which reads from a Reader");
+        }
+        
+        if (limit + extra > buffer.length) {
+            int capacity = Math.max(buffer.length * 2, limit + extra);
+            char[] expanded = new char[capacity];
+            System.arraycopy(buffer, 0, expanded, 0, limit);
+            buffer = expanded;
+        }
+    }
+    
     /**
      * Adds an element to the back of the stream.
      */
     public void append(Character e) {
-        checkpoints.clear();
-        backingStore.addLast(e);
+        reserve(1);
+        checkpointDepth = 0;
+        version++;
+        buffer[limit++] = e;
     }
     
     /**
      * Adds all the elements to the back of the stream.
      */
-    public void extend(String text) {
-        checkpoints.clear();
-        for (char c: text.toCharArray()) {
-            append(c);
+    public void extend(CharSequence text) {
+        int length = text.length();
+        reserve(length);
+        checkpointDepth = 0;
+        version++;
+        
+        if (text instanceof String) {
+            ((String)text).getChars(0, length, buffer, limit);
+        } else {
+            for (int i = 0; i < length; i++) {
+                buffer[limit + i] = text.charAt(i);
+            }
         }
+        
+        limit += length;
     }
-
+    
+    /**
+     * Returns a number which changes whenever something is added to the
+     * stream.
+     */
+    int version() {
+        return version;
+    }
+    
     /**
      * Gets the first element of the stream without removing it.
      */
     public Character peek() {
-        return backingStore.getFirst();
+        return peekChar();
     }
-
+    
+    /**
+     * Like peek(), but without boxing the result.
+     */
+    public char peekChar() {
+        if (!hasCharAt(cursor)) {
+            throw new NoSuchElementException();
+        }
+        
+        return buffer[cursor - base];
+    }
+    
     /**
      * Gets an iterator which walks the elements of the stream.
      */
     public Iterator<Character> iterator() {
-        return backingStore.iterator();
+        return new Iterator<Character>() {
+            private int position = cursor;
+            
+            @Override
+            public boolean hasNext() {
+                return hasCharAt(position);
+            }
+            
+            @Override
+            public Character next() {
+                if (!hasCharAt(position)) {
+                    throw new NoSuchElementException();
+                }
+                
+                return charAt(position++);
+            }
+        };
     }
     
     /**
      * Gets the next element from the stream and removes it.
      */
     public Character get() {
-        Character result = backingStore.remove();
+        return getChar();
+    }
+    
+    /**
+     * Like get(), but without boxing the result.
+     */
+    public char getChar() {
+        if (!hasCharAt(cursor)) {
+            throw new NoSuchElementException();
+        }
         
-        int checkpointIndex = 0;
-        for (Checkpoint checkpoint: checkpoints) {
-            if (checkpointIndex == 0 || checkpoint.isStrong()) {
-                checkpoint.record(result);
+        return buffer[cursor++ - base];
+    }
+    
+    /**
+     * Moves forward over the given number of characters, as though get() had
+     * been called that many times.
+     */
+    public void skip(int count) {
+        if (count < 0 || (count > 0 && !hasCharAt(cursor + count - 1))) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Cannot skip %d with %d left", count, limit - cursor));
+        }
+        
+        cursor += count;
+    }
+    
+    /**
+     * Moves forward over every character in the given class, stopping at
+     * the first one that isn't (or the end of the stream). Returns how many
+     * characters were skipped.
+     * 
+     * This scans the buffer directly, so it's much faster than reading the
+     * characters one at a time.
+     */
+    public int skipWhile(CharClass chars) {
+        int start = cursor;
+        while (true) {
+            int position = cursor - base;
+            int end = limit - base;
+            while (position < end && chars.contains(buffer[position])) {
+                position++;
+            }
+            
+            cursor = position + base;
+            if (cursor < limit || !hasCharAt(cursor)) {
+                return cursor - start;
             }
-            checkpointIndex++;
+        }
+    }
+    
+    /**
+     * Gets the character at the given position, which may be anywhere that
+     * position() has been or could go. This doesn't move the stream.
+     */
+    public char charAt(int position) {
+        if (position < base || !hasCharAt(position)) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Position %d outside of stream window [%d, %d)",
+                            position, base, limit));
+        }
+        
+        return buffer[position - base];
+    }
+    
+    /**
+     * Returns how many characters have been read from the start of the
+     * stream.
+     */
+    public int position() {
+        return cursor;
+    }
+    
+    /**
+     * Returns the text which starts at the given position, and which runs
+     * for the given number of characters. This is how parsers that work
+     * using tryMatch get at the text they matched.
+     */
+    public String slice(int start, int length) {
+        if (start < base || length < 0 || !hasCharAt(start + length - 1)) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Slice [%d, +%d) outside of stream window [%d, %d)",
+                            start, length, base, limit));
         }
         
-        return result;
+        return new String(buffer, start - base, length);
     }
     
     /**
-     * Returns the number of elements left in the stream.
+     * Returns the number of elements left in the stream. For a stream that
+     * reads from a Reader, this has to read the rest of the input to find
+     * out, so use isEmpty() where possible.
      */
     public int size() {
-        return backingStore.size();
+        while (reader != null && readMore()) {
+            // Keep going until the reader runs out
+        }
+        
+        return limit - cursor;
     }
     
     /**
@@ -233,10 +542,7 @@ public class CheckpointStream implements Iterable<Character> {
      */
     @Override
     public String toString() {
-        StringBuilder builder = new StringBuilder();
-        for (char c: this) {
-            builder.append(c);
-        }
-        return builder.toString();
+        int length = size();
+        return new String(buffer, cursor - base, length);
     }
 }
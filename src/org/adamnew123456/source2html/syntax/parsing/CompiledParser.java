@@ -0,0 +1,44 @@
+package org.adamnew123456.source2html.syntax.parsing;
+
+import org.adamnew123456.source2html.syntax.dfa.Regex;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A parser which runs a MethodHandle built by the ParserCompiler, in place
+ * of the tree of parsers it was compiled from.
+ */
+public class CompiledParser extends MatchingParser {
+    private final Parser source;
+    private final MethodHandle handle;
+    
+    CompiledParser(Parser source, MethodHandle handle) {
+        this.source = source;
+        this.handle = handle;
+    }
+    
+    /**
+     * Returns the handle which this parser runs.
+     */
+    MethodHandle getHandle() {
+        return handle;
+    }
+    
+    @Override
+    public int tryMatch(CheckpointStream stream) {
+        try {
+            return (int)handle.invokeExact(stream);
+        } catch (RuntimeException | Error err) {
+            throw err;
+        } catch (Throwable err) {
+            // The handles are only built out of methods that don't throw
+            // checked exceptions, and parsers can't throw them either
+            throw new IllegalStateException(err);
+        }
+    }
+    
+    @Override
+    public Regex toRegex() {
+        return source.toRegex();
+    }
+}
@@ -1,12 +1,12 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
-import java.util.Optional;
+import org.adamnew123456.source2html.syntax.dfa.Regex;
 
 /**
  * A parser which tries to parse from multiple input parsers, succeeding if one
  * of them works, or failing if all fail.
  */
-public class EitherParser implements Parser {
+public class EitherParser extends MatchingParser {
     Parser[] parsers;
     
     public EitherParser(Parser... parsers) {
@@ -14,16 +14,25 @@ public class EitherParser implements Parser {
     }
 
     @Override
-    public Optional<String> tryParse(CheckpointStream stream) {
+    public int tryMatch(CheckpointStream stream) {
         for (Parser parser: parsers) {
-            Optional<String> result = parser.tryParse(stream);
+            int result = parser.tryMatch(stream);
             
-            if (result.isPresent()) {
+            if (result != NO_MATCH) {
                 return result;
             }
         }
         
-        return Optional.empty();
+        return NO_MATCH;
+    }
+    
+    @Override
+    public Regex toRegex() {
+        Regex[] options = new Regex[parsers.length];
+        for (int i = 0; i < parsers.length; i++) {
+            options[i] = parsers[i].toRegex();
+        }
+        
+        return Regex.union(options);
     }
-
 }
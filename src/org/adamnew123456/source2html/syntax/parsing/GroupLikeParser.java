@@ -1,15 +1,17 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
-import java.util.Optional;
-
 /**
- * A parser which is based upon some list of characters.
+ * A parser which is based upon some group of characters.
  */
-public abstract class GroupLikeParser implements Parser {
-    protected String chars;
+public abstract class GroupLikeParser extends MatchingParser {
+    protected CharClass group;
     
     public GroupLikeParser(String chars) {
-        this.chars = chars;
+        this(CharClass.of(chars));
+    }
+    
+    public GroupLikeParser(CharClass group) {
+        this.group = group;
     }
     
     /**
@@ -20,21 +22,15 @@ public abstract class GroupLikeParser implements Parser {
      */
     abstract protected boolean matches(char c);
     
-    /**
-     * Converts a character to a string.
-     */
-    protected String charToString(char c) {
-        return String.valueOf(c);
-    }
-    
     @Override
-    public Optional<String> tryParse(CheckpointStream stream) {
-        if (stream.size() == 0) return Optional.empty();
+    public int tryMatch(CheckpointStream stream) {
+        if (stream.isEmpty()) return NO_MATCH;
         
-        if (matches(stream.peek())) {
-            return Optional.of(charToString(stream.get()));
+        if (matches(stream.peekChar())) {
+            stream.getChar();
+            return 1;
         } else {
-            return Optional.empty();
+            return NO_MATCH;
         }
     }
 
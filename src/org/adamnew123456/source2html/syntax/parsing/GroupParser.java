@@ -1,5 +1,7 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
+import org.adamnew123456.source2html.syntax.dfa.Regex;
+
 /**
  * A parser which accepts a single character from a group.
  */
@@ -7,9 +9,18 @@ public class GroupParser extends GroupLikeParser {
     public GroupParser(String chars) {
         super(chars);
     }
+    
+    public GroupParser(CharClass group) {
+        super(group);
+    }
 
     @Override
     protected boolean matches(char c) {
-        return chars.contains(charToString(c));
+        return group.contains(c);
+    }
+    
+    @Override
+    public Regex toRegex() {
+        return Regex.chars(group.toCharSet());
     }
 }
@@ -0,0 +1,26 @@
+package org.adamnew123456.source2html.syntax.parsing;
+
+import java.util.Optional;
+
+/**
+ * A parser which works in terms of tryMatch, and only builds a String when
+ * it is called through tryParse. All of the parsers in this package are
+ * MatchingParsers, which means that combining them never builds any
+ * intermediate Strings.
+ */
+public abstract class MatchingParser implements Parser {
+    @Override
+    public abstract int tryMatch(CheckpointStream stream);
+    
+    @Override
+    public Optional<String> tryParse(CheckpointStream stream) {
+        int start = stream.position();
+        int length = tryMatch(stream);
+        
+        if (length == NO_MATCH) {
+            return Optional.empty();
+        } else {
+            return Optional.of(stream.slice(start, length));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.adamnew123456.source2html.syntax.parsing;
+
+import java.util.Arrays;
+
+/**
+ * A MemoTable remembers what MemoizingParsers matched at each position of a
+ * stream, so that running the same parser at the same position again doesn't
+ * have to redo the work.
+ * 
+ * The table has a fixed number of slots, and each (parser, position) pair can
+ * only go into one of them - when two pairs want the same slot, the newer one
+ * evicts the older one. That keeps the memory the table uses bounded, no matter 
+ * how long the stream is, at the cost of sometimes having to redo work.
+ * 
+ * A table only remembers results for one stream at a time. Using it with a
+ * different stream, or after the stream has been added to, forgets everything
+ * it knew.
+ */
+public class MemoTable {
+    /**
+     * What lookup returns when the table doesn't know the result.
+     */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    
+    // Marks a slot which hasn't been filled
+    private static final int EMPTY = -1;
+    
+    /*
+     * Each slot is stored across three arrays: which parser it belongs to,
+     * where the parser was run, and what tryMatch returned.
+     */
+    private final int mask;
+    private final int[] parsers;
+    private final int[] positions;
+    private final int[] results;
+    
+    private int nextParser;
+    
+    // The stream the results are for, and its version when they were found
+    private CheckpointStream stream;
+    private int streamVersion;
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * Creates a table with room for at least the given number of results.
+     */
+    public MemoTable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size *= 2;
+        }
+        
+        mask = size - 1;
+        parsers = new int[size];
+        positions = new int[size];
+        results = new int[size];
+        Arrays.fill(parsers, EMPTY);
+    }
+    
+    /**
+     * Gives out a new identifier, which a parser uses to keep its results
+     * apart from the other parsers using this table.
+     */
+    int register() {
+        return nextParser++;
+    }
+    
+    /**
+     * Finds the slot which the given parser and position go into.
+     */
+    private int slotOf(int parser, int position) {
+        int hash = parser * 0x9e3779b9 + position * 0x85ebca6b;
+        hash ^= hash >>> 15;
+        return hash & mask;
+    }
+    
+    /**
+     * Forgets everything if the stream isn't the one the results are for.
+     */
+    private void checkStream(CheckpointStream current) {
+        if (current != stream || current.version() != streamVersion) {
+            Arrays.fill(parsers, EMPTY);
+            stream = current;
+            streamVersion = current.version();
+        }
+    }
+    
+    /**
+     * Returns what the given parser matched at the current position of the
+     * stream, or UNKNOWN if it hasn't been run there (or its result has since
+     * been evicted).
+     */
+    int lookup(int parser, CheckpointStream current) {
+        checkStream(current);
+        
+        int position = current.position();
+        int slot = slotOf(parser, position);
+        if (parsers[slot] == parser && positions[slot] == position) {
+            hits++;
+            return results[slot];
+        } else {
+            misses++;
+            return UNKNOWN;
+        }
+    }
+    
+    /**
+     * Remembers what the given parser matched at the given position.
+     */
+    void store(int parser, int position, int result) {
+        int slot = slotOf(parser, position);
+        if (parsers[slot] != EMPTY 
+                && (parsers[slot] != parser || positions[slot] != position)) {
+            evictions++;
+        }
+        
+        parsers[slot] = parser;
+        positions[slot] = position;
+        results[slot] = result;
+    }
+    
+    /**
+     * Returns the number of slots in this table.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+    
+    /**
+     * Returns how many lookups found a result.
+     */
+    public long getHits() {
+        return hits;
+    }
+    
+    /**
+     * Returns how many lookups didn't find a result.
+     */
+    public long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * Returns how many results were pushed out to make room for others.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+    
+    /**
+     * Returns the fraction of lookups which found a result.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double)hits / lookups;
+    }
+    
+    /**
+     * Sets all the counters back to zero.
+     */
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+}
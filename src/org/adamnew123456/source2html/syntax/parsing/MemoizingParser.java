@@ -0,0 +1,52 @@
+package org.adamnew123456.source2html.syntax.parsing;
+
+import org.adamnew123456.source2html.syntax.dfa.Regex;
+
+/**
+ * A parser which remembers what another parser matched at each position of
+ * the stream, in a MemoTable. This is packrat parsing: when a grammar ends up 
+ * running the same parser at the same position more than once (for example,
+ * after an EitherParser backtracks out of a longer choice), the later runs
+ * just skip over what the first one matched.
+ * 
+ * This is opt-in, since it only pays off for parsers which are expensive and
+ * are actually run again. Several parsers can share one table, which bounds 
+ * how much memory they all use together:
+ * 
+ *     MemoTable table = new MemoTable(4096);
+ *     Parser escape = new MemoizingParser(escapes, table);
+ *     Parser quoted = new MemoizingParser(quotedString, table);
+ */
+public class MemoizingParser extends MatchingParser {
+    private final Parser parser;
+    private final MemoTable table;
+    private final int id;
+    
+    public MemoizingParser(Parser parser, MemoTable table) {
+        this.parser = parser;
+        this.table = table;
+        this.id = table.register();
+    }
+    
+    @Override
+    public int tryMatch(CheckpointStream stream) {
+        int result = table.lookup(id, stream);
+        if (result != MemoTable.UNKNOWN) {
+            if (result != NO_MATCH) {
+                stream.skip(result);
+            }
+            
+            return result;
+        }
+        
+        int position = stream.position();
+        result = parser.tryMatch(stream);
+        table.store(id, position, result);
+        return result;
+    }
+    
+    @Override
+    public Regex toRegex() {
+        return parser.toRegex();
+    }
+}
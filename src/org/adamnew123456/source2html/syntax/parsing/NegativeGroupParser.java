@@ -1,12 +1,26 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
+import org.adamnew123456.source2html.syntax.dfa.Regex;
+
+/**
+ * A parser which accepts a single character which is not in a group.
+ */
 public class NegativeGroupParser extends GroupLikeParser {
     public NegativeGroupParser(String chars) {
         super(chars);
     }
+    
+    public NegativeGroupParser(CharClass group) {
+        super(group);
+    }
 
     @Override
     protected boolean matches(char c) {
-        return !chars.contains(charToString(c));
+        return !group.contains(c);
+    }
+    
+    @Override
+    public Regex toRegex() {
+        return Regex.chars(group.toCharSet().complement());
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,8 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
+import org.adamnew123456.source2html.syntax.dfa.CharSet;
+import org.adamnew123456.source2html.syntax.dfa.Regex;
+
 import java.util.Optional;
 
 /**
@@ -16,43 +19,132 @@ import java.util.Optional;
  * GroupParser does not match. The negative lookahead is used purely as a check,
  * and is not allowed to affect the stream in a permanent way.
  */
-public class NegativeLookaheadParser implements Parser {
-    private Parser lookahead;
-    private Parser parser;
+public class NegativeLookaheadParser extends MatchingParser {
+    Parser lookahead;
+    Parser parser;
+    
+    /*
+     * These are the characters which the lookahead can't start with, and 
+     * which the parser matches on their own. Runs of them can be skipped in
+     * one go, without checking the lookahead or running the parser - in a
+     * comment, that's everything but stars, and in a string, everything but
+     * quotes, backslashes and newlines. This is null if the parsers can't be
+     * converted to work it out.
+     */
+    final CharClass skippable;
     
     public NegativeLookaheadParser(Parser lookahead, Parser parser) {
         this.lookahead = lookahead;
         this.parser = parser;
+        this.skippable = findSkippable();
+    }
+    
+    private CharClass findSkippable() {
+        try {
+            Regex stop = lookahead.toRegex();
+            if (stop.isNullable()) {
+                // The lookahead matches everywhere, so nothing can be skipped
+                return null;
+            }
+            
+            CharSet chars = parser.toRegex().soleChars().minus(stop.firstChars());
+            return chars.isEmpty() ? null : CharClass.of(chars);
+        } catch (UnsupportedOperationException err) {
+            return null;
+        }
     }
     
     @Override
-    public Optional<String> tryParse(CheckpointStream stream) {
-        StringBuffer buffer = new StringBuffer();
+    public int tryMatch(CheckpointStream stream) {
+        int start = stream.position();
         
         boolean lookaheadFails = true;
         boolean parserSucceeds = true;
         do {
+            if (skippable != null) {
+                stream.skipWhile(skippable);
+            }
+            
             StrongCheckpoint check = stream.strongCheckpoint();
-            Optional<String> lookaheadResult = lookahead.tryParse(stream);
+            int lookaheadResult = lookahead.tryMatch(stream);
  
             // Ensure that the stream is not affected by the lookahead check
             if (check.needsRestore()) {
-                stream.restore();
+                stream.restore(check);
             }
             
-            if (lookaheadResult.isPresent()) {
+            if (lookaheadResult != NO_MATCH) {
                 lookaheadFails = false;
-            } else {
-                Optional<String> parserResult = parser.tryParse(stream);
-                
-                if (parserResult.isPresent()) {
-                    buffer.append(parserResult.get());
-                } else {
-                    parserSucceeds = false;
-                }
+            } else if (parser.tryMatch(stream) == NO_MATCH) {
+                parserSucceeds = false;
             }
         } while (!stream.isEmpty() && lookaheadFails && parserSucceeds);
         
-        return Optional.of(buffer.toString());
+        return stream.position() - start;
+    }
+    
+    /**
+     * Whether the lookahead only ever looks at one character. If it looks at
+     * more than that, it can see past the end of what this parser matched,
+     * which a Regex can't describe on its own.
+     */
+    boolean hasCharLookahead() {
+        return lookahead.toRegex().asCharSet().isPresent();
+    }
+    
+    /**
+     * Returns a Regex which matches the same thing as the lookahead.
+     */
+    Regex lookaheadRegex() {
+        return lookahead.toRegex();
+    }
+    
+    /**
+     * This can only convert parsers with a single character lookahead; see
+     * toRegexWithTerminator for the rest.
+     */
+    @Override
+    public Regex toRegex() {
+        if (!hasCharLookahead()) {
+            throw new UnsupportedOperationException(
+                    "Only single character lookaheads can be converted on their own");
+        }
+        
+        CharSet stop = lookahead.toRegex().asCharSet().get();
+        Regex step = parser.toRegex();
+        
+        Optional<CharSet> stepChars = step.asCharSet();
+        if (stepChars.isPresent()) {
+            return Regex.star(Regex.chars(stepChars.get().minus(stop)));
+        } else {
+            // Each step runs until the next lookahead check, so only the 
+            // start of each step has to avoid the lookahead
+            Regex startsWithStop = Regex.concat(Regex.chars(stop), Regex.ANYTHING);
+            return Regex.star(Regex.minus(step, startsWithStop));
+        }
+    }
+    
+    /**
+     * Converts this parser along with the lookahead matched right after it,
+     * which is how multi-character lookaheads are used (for example, the end
+     * of a block comment). This only works if the parser matches a single
+     * character at a time.
+     * 
+     * Matching up to the terminator means matching anything which ends with 
+     * the terminator, as long as the terminator doesn't also show up any
+     * earlier than that.
+     */
+    Regex toRegexWithTerminator() {
+        Optional<CharSet> stepChars = parser.toRegex().asCharSet();
+        if (!stepChars.isPresent()) {
+            throw new UnsupportedOperationException(
+                    "Only single character parsers can be converted up to a terminator");
+        }
+        
+        Regex terminator = lookahead.toRegex();
+        Regex anyChar = Regex.chars(CharSet.ALL);
+        return Regex.minus(
+                Regex.concat(Regex.star(Regex.chars(stepChars.get())), terminator),
+                Regex.concat(Regex.ANYTHING, terminator, anyChar, Regex.ANYTHING));
     }
 }
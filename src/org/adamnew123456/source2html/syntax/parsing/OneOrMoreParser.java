@@ -1,36 +1,36 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
-import java.util.Optional;
+import org.adamnew123456.source2html.syntax.dfa.Regex;
 
 /**
  * This parser ensures that the given parser parses at least once, and maybe
  * more times than that.
  */
-public class OneOrMoreParser implements Parser {
-    private Parser parser;
+public class OneOrMoreParser extends MatchingParser {
+    Parser parser;
     
     public OneOrMoreParser(Parser parser) {
         this.parser = parser;
     }
 
     @Override
-    public Optional<String> tryParse(CheckpointStream stream) {
-        StringBuffer buffer = new StringBuffer();
-        Optional<String> result = parser.tryParse(stream);
-        if (!result.isPresent()) {
-            return Optional.empty();
-        } else {
-            buffer.append(result.get());
+    public int tryMatch(CheckpointStream stream) {
+        int start = stream.position();
+        if (parser.tryMatch(stream) == NO_MATCH) {
+            return NO_MATCH;
         }
         
+        int result;
         do {
-            result = parser.tryParse(stream);
-            
-            if (result.isPresent()) {
-                buffer.append(result.get());
-            }
-        } while (result.isPresent());
+            result = parser.tryMatch(stream);
+        } while (result != NO_MATCH);
         
-        return Optional.of(buffer.toString());
+        return stream.position() - start;
+    }
+    
+    @Override
+    public Regex toRegex() {
+        Regex inner = parser.toRegex();
+        return Regex.concat(inner, Regex.star(inner));
     }
 }
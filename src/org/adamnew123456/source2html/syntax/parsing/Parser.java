@@ -8,9 +8,51 @@ package org.adamnew123456.source2html.syntax.parsing;
  * 
  * The second part of the 'failure' clause is very important - the parser
  * *must* reset the contents of the stream should it fail.
+ * 
+ * Parsers can also be run through tryMatch, which follows the same rules but
+ * only reports how much of the stream was accepted. Since the accepted text
+ * is still sitting in the stream, callers which need it can ask the stream
+ * for it afterwards.
  */
+import org.adamnew123456.source2html.syntax.dfa.Regex;
+
 import java.util.Optional;
 
 public interface Parser {
+    /**
+     * What tryMatch returns when the parser rejects the input.
+     */
+    int NO_MATCH = -1;
+    
     Optional<String> tryParse(CheckpointStream stream);
+    
+    /**
+     * Returns the number of characters accepted from the current position of
+     * the stream, or NO_MATCH if the input was rejected.
+     * 
+     * This goes through tryParse by default, so it only avoids building 
+     * Strings for parsers which override it.
+     */
+    default int tryMatch(CheckpointStream stream) {
+        Optional<String> result = tryParse(stream);
+        if (result.isPresent()) {
+            return result.get().length();
+        } else {
+            return NO_MATCH;
+        }
+    }
+    
+    /**
+     * Converts this parser into a Regex which matches the same input, so that
+     * it can be compiled into a StateTable.
+     * 
+     * Either choices and repetitions are converted into plain alternatives
+     * and stars, which only agree with the parser if no choice can match the 
+     * start of what a later choice (or the next repetition) matches. Parsers
+     * which can't be converted throw UnsupportedOperationException.
+     */
+    default Regex toRegex() {
+        throw new UnsupportedOperationException(
+                getClass().getSimpleName() + " cannot be converted into a Regex");
+    }
 }
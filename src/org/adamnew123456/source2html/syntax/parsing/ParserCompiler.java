@@ -0,0 +1,304 @@
+package org.adamnew123456.source2html.syntax.parsing;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * The ParserCompiler turns a tree of parsers into a single MethodHandle,
+ * which does the same thing as calling tryMatch on the root of the tree.
+ * 
+ * Running a tree of parsers directly means making a virtual call to tryMatch
+ * at every node, and since every node is a different class, the JIT can't 
+ * inline those calls. A MethodHandle built out of combinators has no such
+ * calls - each node is compiled into guards, folds and loops over the nodes 
+ * beneath it, which the JIT sees straight through. Groups are also compiled 
+ * down to their CharClass, so that a NegativeGroupParser becomes a plain
+ * lookup in the negated class.
+ * 
+ * Parsers which the compiler doesn't know about (including MemoizingParsers,
+ * whose tables have to stay shared) are called through tryMatch as usual.
+ */
+public class ParserCompiler {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    
+    // The type of every compiled parser, which is the type of tryMatch
+    private static final MethodType MATCH_TYPE = 
+            MethodType.methodType(int.class, CheckpointStream.class);
+    
+    private static final MethodHandle ANY_CHAR = find("anyChar", MATCH_TYPE);
+    private static final MethodHandle GROUP = find("group", 
+            MATCH_TYPE.insertParameterTypes(0, CharClass.class));
+    private static final MethodHandle IS_MATCH = find("isMatch",
+            MethodType.methodType(boolean.class, int.class));
+    private static final MethodHandle OR_ZERO = find("orZero",
+            MethodType.methodType(int.class, int.class));
+    private static final MethodHandle ADD = find("add",
+            MethodType.methodType(int.class, int.class, int.class));
+    private static final MethodHandle BEGIN_SEQUENCE = find("beginSequence", MATCH_TYPE);
+    private static final MethodHandle END_SEQUENCE = find("endSequence",
+            MethodType.methodType(int.class, int.class, int.class, CheckpointStream.class));
+    private static final MethodHandle LENGTH_SINCE = find("lengthSince",
+            MethodType.methodType(int.class, int.class, CheckpointStream.class));
+    private static final MethodHandle CHECKPOINT = find("checkpoint",
+            MethodType.methodType(void.class, CheckpointStream.class));
+    private static final MethodHandle RESTORE_MATCHED = find("restoreMatched",
+            MethodType.methodType(boolean.class, int.class, CheckpointStream.class));
+    private static final MethodHandle CONTINUES_AFTER = find("continuesAfter",
+            MethodType.methodType(boolean.class, int.class, CheckpointStream.class));
+    private static final MethodHandle SKIP_WHILE = find("skipWhile",
+            MethodType.methodType(void.class, CharClass.class, CheckpointStream.class));
+    private static final MethodHandle POSITION;
+    private static final MethodHandle TRY_MATCH;
+    
+    static {
+        try {
+            POSITION = LOOKUP.findVirtual(CheckpointStream.class, "position",
+                    MethodType.methodType(int.class));
+            TRY_MATCH = LOOKUP.findVirtual(Parser.class, "tryMatch", MATCH_TYPE);
+        } catch (ReflectiveOperationException err) {
+            throw new ExceptionInInitializerError(err);
+        }
+    }
+    
+    /**
+     * Compiles the tree of parsers into a single parser.
+     */
+    public static Parser compile(Parser parser) {
+        return new CompiledParser(parser, compileHandle(parser));
+    }
+    
+    /**
+     * Compiles the tree of parsers into a MethodHandle, which takes a 
+     * CheckpointStream and returns the same thing tryMatch would.
+     */
+    public static MethodHandle compileHandle(Parser parser) {
+        if (parser instanceof CompiledParser) {
+            return ((CompiledParser)parser).getHandle();
+        } else if (parser instanceof AnyCharParser) {
+            return ANY_CHAR;
+        } else if (parser instanceof GroupParser) {
+            return MethodHandles.insertArguments(GROUP, 0, ((GroupParser)parser).group);
+        } else if (parser instanceof NegativeGroupParser) {
+            CharClass group = ((NegativeGroupParser)parser).group.negate();
+            return MethodHandles.insertArguments(GROUP, 0, group);
+        } else if (parser instanceof EitherParser) {
+            return compileEither(((EitherParser)parser).parsers);
+        } else if (parser instanceof SequenceParser) {
+            return compileSequence(((SequenceParser)parser).parsers);
+        } else if (parser instanceof ZeroOrOneParser) {
+            return MethodHandles.filterReturnValue(
+                    compileHandle(((ZeroOrOneParser)parser).parser), OR_ZERO);
+        } else if (parser instanceof ZeroOrMoreParser) {
+            return compileRepeat(compileHandle(((ZeroOrMoreParser)parser).parser));
+        } else if (parser instanceof OneOrMoreParser) {
+            return compileRepeatAtLeastOnce(
+                    compileHandle(((OneOrMoreParser)parser).parser));
+        } else if (parser instanceof NegativeLookaheadParser) {
+            NegativeLookaheadParser negative = (NegativeLookaheadParser)parser;
+            return compileLookahead(compileHandle(negative.lookahead),
+                    compileHandle(negative.parser), negative.skippable);
+        } else {
+            return TRY_MATCH.bindTo(parser);
+        }
+    }
+    
+    /**
+     * Tries each option in turn, returning the first one that matches.
+     */
+    private static MethodHandle compileEither(Parser[] options) {
+        MethodHandle result = MethodHandles.dropArguments(
+                MethodHandles.constant(int.class, Parser.NO_MATCH),
+                0, CheckpointStream.class);
+        
+        for (int i = options.length - 1; i >= 0; i--) {
+            // (result, stream) -> isMatch(result) ? result : rest(stream)
+            MethodHandle choose = MethodHandles.guardWithTest(
+                    IS_MATCH,
+                    MethodHandles.dropArguments(
+                            MethodHandles.identity(int.class), 1, CheckpointStream.class),
+                    MethodHandles.dropArguments(result, 0, int.class));
+            result = MethodHandles.foldArguments(choose, compileHandle(options[i]));
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Runs each part in turn, and goes back to the start if any of them
+     * fail.
+     */
+    private static MethodHandle compileSequence(Parser[] parts) {
+        // The body returns 0 if every part matched, and NO_MATCH otherwise
+        MethodHandle body = MethodHandles.dropArguments(
+                MethodHandles.constant(int.class, 0), 0, CheckpointStream.class);
+        MethodHandle fail = MethodHandles.dropArguments(
+                MethodHandles.constant(int.class, Parser.NO_MATCH),
+                0, int.class, CheckpointStream.class);
+        
+        for (int i = parts.length - 1; i >= 0; i--) {
+            MethodHandle next = MethodHandles.guardWithTest(
+                    IS_MATCH,
+                    MethodHandles.dropArguments(body, 0, int.class),
+                    fail);
+            body = MethodHandles.foldArguments(next, compileHandle(parts[i]));
+        }
+        
+        // (start, stream) -> endSequence(body(stream), start, stream)
+        MethodHandle finish = MethodHandles.foldArguments(END_SEQUENCE,
+                MethodHandles.dropArguments(body, 0, int.class));
+        return MethodHandles.foldArguments(finish, BEGIN_SEQUENCE);
+    }
+    
+    /**
+     * Runs the parser until it stops matching, and returns how far it got.
+     */
+    private static MethodHandle compileRepeat(MethodHandle parser) {
+        // do { result = parser(stream) } while (isMatch(result))
+        MethodHandle loop = MethodHandles.doWhileLoop(
+                null,
+                MethodHandles.dropArguments(parser, 0, int.class),
+                MethodHandles.dropArguments(IS_MATCH, 1, CheckpointStream.class));
+        return measure(loop);
+    }
+    
+    /**
+     * Runs the parser once, and then as many more times as it will match.
+     */
+    private static MethodHandle compileRepeatAtLeastOnce(MethodHandle parser) {
+        // (first, stream) -> first + repeat(stream)
+        MethodHandle rest = MethodHandles.foldArguments(
+                MethodHandles.dropArguments(ADD, 2, CheckpointStream.class),
+                MethodHandles.dropArguments(compileRepeat(parser), 0, int.class));
+        MethodHandle next = MethodHandles.guardWithTest(
+                IS_MATCH,
+                rest,
+                MethodHandles.dropArguments(
+                        MethodHandles.identity(int.class), 1, CheckpointStream.class));
+        return MethodHandles.foldArguments(next, parser);
+    }
+    
+    /**
+     * Runs the parser until either the lookahead matches or the parser
+     * doesn't, and returns how far it got.
+     */
+    private static MethodHandle compileLookahead(MethodHandle lookahead, 
+            MethodHandle parser, CharClass skippable) {
+        // checkpoint(stream); restoreMatched(lookahead(stream), stream)
+        MethodHandle lookaheadMatches = MethodHandles.foldArguments(
+                MethodHandles.foldArguments(RESTORE_MATCHED, lookahead),
+                CHECKPOINT);
+        
+        MethodHandle step = MethodHandles.guardWithTest(
+                lookaheadMatches,
+                MethodHandles.dropArguments(
+                        MethodHandles.constant(boolean.class, false), 
+                        0, CheckpointStream.class),
+                MethodHandles.foldArguments(CONTINUES_AFTER, parser));
+        
+        if (skippable != null) {
+            step = MethodHandles.foldArguments(step, 
+                    MethodHandles.insertArguments(SKIP_WHILE, 0, skippable));
+        }
+        
+        // do { keepGoing = step(stream) } while (keepGoing)
+        MethodHandle loop = MethodHandles.doWhileLoop(
+                null,
+                MethodHandles.dropArguments(step, 0, boolean.class),
+                MethodHandles.dropArguments(
+                        MethodHandles.identity(boolean.class), 1, CheckpointStream.class));
+        return measure(loop);
+    }
+    
+    /**
+     * Runs the body, ignoring what it returns, and returns how far the
+     * stream moved.
+     */
+    private static MethodHandle measure(MethodHandle body) {
+        MethodHandle ignored = body.asType(
+                MethodType.methodType(void.class, CheckpointStream.class));
+        
+        // (start, stream) -> { body(stream); lengthSince(start, stream) }
+        MethodHandle finish = MethodHandles.foldArguments(LENGTH_SINCE,
+                MethodHandles.dropArguments(ignored, 0, int.class));
+        return MethodHandles.foldArguments(finish, POSITION);
+    }
+    
+    private static MethodHandle find(String name, MethodType type) {
+        try {
+            return LOOKUP.findStatic(ParserCompiler.class, name, type);
+        } catch (ReflectiveOperationException err) {
+            throw new ExceptionInInitializerError(err);
+        }
+    }
+    
+    /*
+     * These are the pieces that the compiled handles are put together from.
+     */
+    
+    private static int anyChar(CheckpointStream stream) {
+        if (stream.isEmpty()) {
+            return Parser.NO_MATCH;
+        }
+        
+        stream.getChar();
+        return 1;
+    }
+    
+    private static int group(CharClass group, CheckpointStream stream) {
+        if (stream.isEmpty() || !group.contains(stream.peekChar())) {
+            return Parser.NO_MATCH;
+        }
+        
+        stream.getChar();
+        return 1;
+    }
+    
+    private static boolean isMatch(int result) {
+        return result != Parser.NO_MATCH;
+    }
+    
+    private static int orZero(int result) {
+        return result == Parser.NO_MATCH ? 0 : result;
+    }
+    
+    private static int add(int first, int second) {
+        return first + second;
+    }
+    
+    private static int beginSequence(CheckpointStream stream) {
+        stream.checkpoint();
+        return stream.position();
+    }
+    
+    private static int endSequence(int result, int start, CheckpointStream stream) {
+        if (result == Parser.NO_MATCH) {
+            stream.restore();
+            return Parser.NO_MATCH;
+        }
+        
+        stream.commit();
+        return stream.position() - start;
+    }
+    
+    private static int lengthSince(int start, CheckpointStream stream) {
+        return stream.position() - start;
+    }
+    
+    private static void checkpoint(CheckpointStream stream) {
+        stream.checkpoint();
+    }
+    
+    private static void skipWhile(CharClass chars, CheckpointStream stream) {
+        stream.skipWhile(chars);
+    }
+    
+    private static boolean restoreMatched(int result, CheckpointStream stream) {
+        stream.restore();
+        return result != Parser.NO_MATCH;
+    }
+    
+    private static boolean continuesAfter(int result, CheckpointStream stream) {
+        return result != Parser.NO_MATCH && !stream.isEmpty();
+    }
+}
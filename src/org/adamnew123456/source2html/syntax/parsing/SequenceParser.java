@@ -1,12 +1,15 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
-import java.util.Optional;
+import org.adamnew123456.source2html.syntax.dfa.Regex;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A sequence parser makes sure that all of its input parsers execute 
  * successfully, in order.
  */
-public class SequenceParser implements Parser {
+public class SequenceParser extends MatchingParser {
     Parser[] parsers;
     
     public SequenceParser(Parser... parsers) {
@@ -14,23 +17,64 @@ public class SequenceParser implements Parser {
     }
     
     @Override
-    public Optional<String> tryParse(CheckpointStream stream) {
+    public int tryMatch(CheckpointStream stream) {
+        int start = stream.position();
         stream.checkpoint();
         
-        StringBuffer result = new StringBuffer();
         for (Parser parser: parsers) {
-            Optional<String> intermed_result = parser.tryParse(stream);
-            
-            if (intermed_result.isPresent()) {
-                result.append(intermed_result.get());
-            } else {
+            if (parser.tryMatch(stream) == NO_MATCH) {
                 stream.restore();
-                return Optional.empty();
+                return NO_MATCH;
             }
         }
         
         stream.commit();
-        return Optional.of(result.toString());
+        return stream.position() - start;
+    }
+    
+    @Override
+    public Regex toRegex() {
+        List<Regex> parts = new ArrayList<>();
+        
+        for (int i = 0; i < parsers.length; i++) {
+            int terminatorEnd = findTerminator(i);
+            if (terminatorEnd != -1) {
+                NegativeLookaheadParser negative = (NegativeLookaheadParser)parsers[i];
+                parts.add(negative.toRegexWithTerminator());
+                i = terminatorEnd;
+            } else {
+                parts.add(parsers[i].toRegex());
+            }
+        }
+        
+        return Regex.concat(parts.toArray(new Regex[0]));
+    }
+    
+    /**
+     * If the parser at the given index is a negative lookahead which can see
+     * past its own end, and the parsers after it match that same lookahead,
+     * then this returns the index of the last of those parsers. Otherwise,
+     * this returns -1.
+     */
+    private int findTerminator(int index) {
+        if (!(parsers[index] instanceof NegativeLookaheadParser)) {
+            return -1;
+        }
+        
+        NegativeLookaheadParser negative = (NegativeLookaheadParser)parsers[index];
+        if (negative.hasCharLookahead()) {
+            return -1;
+        }
+        
+        Regex lookahead = negative.lookaheadRegex();
+        Regex following = Regex.EMPTY;
+        for (int i = index + 1; i < parsers.length; i++) {
+            following = Regex.concat(following, parsers[i].toRegex());
+            if (following.equals(lookahead)) {
+                return i;
+            }
+        }
+        
+        return -1;
     }
-
 }
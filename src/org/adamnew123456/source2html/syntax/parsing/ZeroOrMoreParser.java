@@ -1,31 +1,31 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
-import java.util.Optional;
+import org.adamnew123456.source2html.syntax.dfa.Regex;
 
 /**
  * This parser allows the given parser to match any number of times
  * (this cannot fail).
  */
-public class ZeroOrMoreParser implements Parser {
-    private Parser parser;
+public class ZeroOrMoreParser extends MatchingParser {
+    Parser parser;
     
     public ZeroOrMoreParser(Parser parser) {
         this.parser = parser;
     }
 
     @Override
-    public Optional<String> tryParse(CheckpointStream stream) {
-        StringBuffer buffer = new StringBuffer();
-        Optional<String> result;
-        
+    public int tryMatch(CheckpointStream stream) {
+        int start = stream.position();
+        int result;
         do {
-            result = parser.tryParse(stream);
-            
-            if (result.isPresent()) {
-                buffer.append(result.get());
-            }
-        } while (result.isPresent());
+            result = parser.tryMatch(stream);
+        } while (result != NO_MATCH);
         
-        return Optional.of(buffer.toString());
+        return stream.position() - start;
+    }
+    
+    @Override
+    public Regex toRegex() {
+        return Regex.star(parser.toRegex());
     }
 }
@@ -1,26 +1,31 @@
 package org.adamnew123456.source2html.syntax.parsing;
 
-import java.util.Optional;
+import org.adamnew123456.source2html.syntax.dfa.Regex;
 
 /**
  * This parser takes another parser, and applies it either one time or zero
  * times (it cannot fail).
  */
-public class ZeroOrOneParser implements Parser {
-    private Parser parser;
+public class ZeroOrOneParser extends MatchingParser {
+    Parser parser;
     
     public ZeroOrOneParser(Parser parser) {
         this.parser = parser;
     }
 
     @Override
-    public Optional<String> tryParse(CheckpointStream stream) {
-        Optional<String> result = parser.tryParse(stream);
+    public int tryMatch(CheckpointStream stream) {
+        int result = parser.tryMatch(stream);
         
-        if (result.isPresent()) {
+        if (result != NO_MATCH) {
             return result;
         } else {
-            return Optional.of("");
+            return 0;
         }
     }
+    
+    @Override
+    public Regex toRegex() {
+        return Regex.optional(parser.toRegex());
+    }
 }
@@ -0,0 +1,98 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.syntax.JavaLexer;
+import org.adamnew123456.source2html.syntax.Token;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Malformed inputs which used to take time quadratic in their length to lex.
+ * Each of these is large enough that a quadratic lexer blows well past the
+ * time limit, while a linear one finishes in a fraction of it.
+ */
+public class AdversarialLexerTest {
+    private static final int SIZE = 200000;
+    private static final long TIME_LIMIT = 10000;
+    
+    /**
+     * Repeats the given text until it is at least SIZE characters long.
+     */
+    private String repeat(String text) {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < SIZE) {
+            builder.append(text);
+        }
+        
+        return builder.toString();
+    }
+    
+    /**
+     * Lexes the code, and checks that the tokens add up to the original code.
+     */
+    private void assertLexes(String code) {
+        StringBuilder rebuilt = new StringBuilder();
+        for (Token token: new JavaLexer(code)) {
+            rebuilt.append(token.getChunk());
+        }
+        
+        assertEquals("Tokens don't add up to the input", rebuilt.toString(), code);
+    }
+    
+    /**
+     * Checks that both engines agree on a smaller piece of the code.
+     */
+    private void assertEnginesAgree(String code) {
+        String sample = code.substring(0, Math.min(code.length(), 2000));
+        List<Token> parsed = new ArrayList<>();
+        List<Token> table = new ArrayList<>();
+        
+        new JavaLexer(sample, JavaLexer.Engine.PARSERS).forEach(parsed::add);
+        new JavaLexer(sample, JavaLexer.Engine.STATE_TABLE).forEach(table::add);
+        assertEquals("Engines disagree on malformed input", parsed, table);
+    }
+    
+    @Test(timeout = TIME_LIMIT)
+    public void testUnterminatedComments() {
+        String code = repeat("/* x ");
+        assertEnginesAgree(code);
+        assertLexes(code);
+    }
+    
+    @Test(timeout = TIME_LIMIT)
+    public void testUnterminatedCommentBeforeText() {
+        String code = "/*" + repeat("int x = 1;\n");
+        assertEnginesAgree(code);
+        assertLexes(code);
+    }
+    
+    @Test(timeout = TIME_LIMIT)
+    public void testUnterminatedStringsOnOneLine() {
+        String code = repeat("\"a\\");
+        assertEnginesAgree(code);
+        assertLexes(code);
+    }
+    
+    @Test(timeout = TIME_LIMIT)
+    public void testBadEscapesOnOneLine() {
+        String code = repeat("\"\\u12 \\q ");
+        assertEnginesAgree(code);
+        assertLexes(code);
+    }
+    
+    @Test(timeout = TIME_LIMIT)
+    public void testUnterminatedCharacters() {
+        String code = repeat("'\\u");
+        assertEnginesAgree(code);
+        assertLexes(code);
+    }
+    
+    @Test(timeout = TIME_LIMIT)
+    public void testMixedGarbage() {
+        String code = repeat("/*\"'\\/*\" x '/");
+        assertEnginesAgree(code);
+        assertLexes(code);
+    }
+}
@@ -0,0 +1,108 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.BuildManifest;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class BuildManifestTest {
+    private static BuildManifest.Entry entry(String source, String pkg, String name) {
+        return new BuildManifest.Entry(source, "00ff", 10, 1000, pkg, name,
+                pkg + "/" + name + ".html");
+    }
+    
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File outDir = Files.createTempDirectory("manifest").toFile();
+        BuildManifest manifest = new BuildManifest("charset=UTF-8");
+        manifest.put(entry("a/A.java", "a", "A"));
+        manifest.put(entry("dir with\ttab/B.java", "b", "B"));
+        manifest.save(outDir);
+        
+        BuildManifest loaded = BuildManifest.load(outDir, "charset=UTF-8");
+        assertTrue("Listing changed", loaded.hasSameListing(manifest));
+        
+        BuildManifest.Entry tabbed = loaded.get("dir with\ttab/B.java");
+        assertEquals("Wrong output", tabbed.getOutput(), "b/B.html");
+        assertTrue("Wrong stat", tabbed.hasStat(10, 1000));
+    }
+    
+    @Test
+    public void testOtherSettingsAreIgnored() throws IOException {
+        File outDir = Files.createTempDirectory("manifest").toFile();
+        BuildManifest manifest = new BuildManifest("charset=UTF-8");
+        manifest.put(entry("a/A.java", "a", "A"));
+        manifest.save(outDir);
+        
+        BuildManifest loaded = BuildManifest.load(outDir, "charset=ISO-8859-1");
+        assertEquals("Kept entries", loaded.getEntries().size(), 0);
+    }
+    
+    @Test
+    public void testMissingManifestIsEmpty() throws IOException {
+        File outDir = Files.createTempDirectory("manifest").toFile();
+        BuildManifest loaded = BuildManifest.load(outDir, "charset=UTF-8");
+        assertEquals("Found entries", loaded.getEntries().size(), 0);
+    }
+    
+    @Test
+    public void testCorruptManifestIsSetAside() throws IOException {
+        File outDir = Files.createTempDirectory("manifest").toFile();
+        BuildManifest manifest = new BuildManifest("charset=UTF-8");
+        manifest.put(entry("a/A.java", "a", "A"));
+        manifest.save(outDir);
+        
+        File file = new File(outDir, BuildManifest.FILE_NAME);
+        Files.write(file.toPath(), "not an entry\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        
+        BuildManifest loaded = BuildManifest.load(outDir, "charset=UTF-8");
+        assertEquals("Kept entries", loaded.getEntries().size(), 0);
+        assertFalse("Corrupt manifest left in place", file.exists());
+        assertTrue("Corrupt manifest not kept", 
+                new File(outDir, BuildManifest.FILE_NAME + ".corrupt").exists());
+    }
+    
+    @Test
+    public void testListingChanges() {
+        BuildManifest before = new BuildManifest("");
+        before.put(entry("a/A.java", "a", "A"));
+        before.put(entry("a/B.java", "a", "B"));
+        
+        BuildManifest after = new BuildManifest("");
+        after.put(entry("a/A.java", "a", "A").withStat(20, 2000));
+        after.put(entry("a/B.java", "a", "B"));
+        assertTrue("Stat changed the listing", after.hasSameListing(before));
+        
+        after.put(entry("a/B.java", "b", "B"));
+        assertFalse("Moved package kept the listing", after.hasSameListing(before));
+        
+        after = new BuildManifest("");
+        after.put(entry("a/A.java", "a", "A"));
+        assertFalse("Deletion kept the listing", after.hasSameListing(before));
+        
+        List<String> missing = before.entriesMissingFrom(after).stream()
+                .map(BuildManifest.Entry::getSource)
+                .collect(Collectors.toList());
+        assertEquals("Wrong missing entries", missing, Arrays.asList("a/B.java"));
+    }
+    
+    @Test
+    public void testHashDoesNotMoveBuffer() {
+        ByteBuffer bytes = ByteBuffer.wrap("abc".getBytes(StandardCharsets.US_ASCII));
+        String hash = BuildManifest.hash(bytes);
+        
+        assertEquals("Buffer moved", bytes.position(), 0);
+        assertEquals("Wrong hash", hash,
+                "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    }
+}
@@ -1,5 +1,9 @@
 package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.syntax.parsing.CharClass;
 import org.adamnew123456.source2html.syntax.parsing.CheckpointStream;
+import org.adamnew123456.source2html.syntax.parsing.StrongCheckpoint;
+
+import java.io.StringReader;
 
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -153,4 +157,166 @@ public class CheckpointStreamTest {
         assertFalse("Commit didn't remove all checkpoints",
                 nonempty.isCheckpointed());
     }
+    
+    @Test
+    public void testStrongCheckpointRestore() {
+        CheckpointStream nonempty = newStream();
+        
+        StrongCheckpoint check = nonempty.strongCheckpoint();
+        assertTrue("New strong checkpoint doesn't need restoring",
+                check.needsRestore());
+        
+        nonempty.get();
+        nonempty.restore();
+        assertStreamEquals("Strong restore didn't revert stream to original state",
+                nonempty, START_STRING);
+        assertFalse("Strong checkpoint still needs restoring after restore",
+                check.needsRestore());
+    }
+    
+    @Test
+    public void testStrongCheckpointUnderWeak() {
+        CheckpointStream nonempty = newStream();
+        
+        nonempty.get();
+        StrongCheckpoint check = nonempty.strongCheckpoint();
+        nonempty.checkpoint();
+        nonempty.get();
+        nonempty.get();
+        nonempty.commit();
+        
+        assertTrue("Committing a weak checkpoint consumed the strong one",
+                check.needsRestore());
+        
+        nonempty.restore();
+        assertStreamEquals("Strong restore didn't revert past the weak checkpoint",
+                nonempty, START_STRING.substring(1));
+        assertFalse("Stream still checkpointed after restore",
+                nonempty.isCheckpointed());
+    }
+    
+    @Test
+    public void testStaleStrongCheckpoint() {
+        CheckpointStream nonempty = newStream();
+        
+        StrongCheckpoint first = nonempty.strongCheckpoint();
+        nonempty.get();
+        nonempty.commit();
+        
+        // This is made at the same depth that the first one was
+        nonempty.get();
+        StrongCheckpoint second = nonempty.strongCheckpoint();
+        nonempty.get();
+        
+        assertFalse("Committed checkpoint picked up its sibling",
+                first.needsRestore());
+        assertTrue("Sibling checkpoint doesn't need restoring",
+                second.needsRestore());
+        
+        try {
+            nonempty.restore(first);
+            fail("Restored a committed checkpoint");
+        } catch (IllegalStateException err) {
+            // This is expected
+        }
+        
+        assertStreamEquals("Rejected restore changed the stream",
+                nonempty, START_STRING.substring(3));
+        
+        nonempty.restore(second);
+        assertStreamEquals("Sibling restore went to the wrong position",
+                nonempty, START_STRING.substring(2));
+        assertFalse("Stream still checkpointed after restore",
+                nonempty.isCheckpointed());
+    }
+    
+    @Test
+    public void testDeepCheckpoints() {
+        CheckpointStream nonempty = newStream();
+        int depth = 1000;
+        
+        for (int i = 0; i < depth; i++) {
+            if (i % 2 == 0) {
+                nonempty.checkpoint();
+            } else {
+                nonempty.strongCheckpoint();
+            }
+            
+            if (!nonempty.isEmpty()) {
+                nonempty.get();
+            }
+        }
+        
+        for (int i = 0; i < depth - 1; i++) {
+            nonempty.commit();
+        }
+        
+        nonempty.restore();
+        assertStreamEquals("Deeply nested restore didn't revert stream",
+                nonempty, START_STRING);
+        assertFalse("Stream still checkpointed after unwinding",
+                nonempty.isCheckpointed());
+    }
+    
+    @Test
+    public void testReaderStream() {
+        CheckpointStream stream = new CheckpointStream(new StringReader(START_STRING), 4);
+        StringBuilder read = new StringBuilder();
+        while (!stream.isEmpty()) {
+            read.append(stream.getChar());
+        }
+        
+        assertEquals("Reader stream read the wrong text", read.toString(), START_STRING);
+        assertEquals("Reader stream is in the wrong position",
+                stream.position(), START_STRING.length());
+    }
+    
+    @Test
+    public void testReaderStreamKeepsCheckpoints() {
+        CheckpointStream stream = new CheckpointStream(new StringReader(START_STRING), 4);
+        stream.getChar();
+        stream.checkpoint();
+        stream.skip(9);
+        
+        assertEquals("Checkpoint did not keep its text",
+                stream.slice(1, 9), START_STRING.substring(1, 10));
+        
+        stream.restore();
+        assertStreamEquals("Reader stream not restored",
+                stream, START_STRING.substring(1));
+    }
+    
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testReaderStreamReleasesPrefix() {
+        CheckpointStream stream = new CheckpointStream(new StringReader(START_STRING), 4);
+        while (!stream.isEmpty()) {
+            stream.getChar();
+        }
+        
+        stream.charAt(0);
+    }
+    
+    @Test
+    public void testSkipWhile() {
+        CheckpointStream nonempty = newStream();
+        CharClass letters = CharClass.range('A', 'Z').union(CharClass.range('a', 'z'));
+        
+        assertEquals("Skipped the wrong number of characters", 
+                nonempty.skipWhile(letters), 5);
+        assertStreamEquals("Skipped to the wrong place", nonempty, ", World");
+        assertEquals("Skipped a character not in the class",
+                nonempty.skipWhile(letters), 0);
+    }
+    
+    @Test
+    public void testReaderSkipWhile() {
+        // The run of letters is longer than the window, so skipping it has
+        // to read more of the input partway through
+        CheckpointStream stream = new CheckpointStream(new StringReader(START_STRING), 4);
+        stream.skip(7);
+        
+        assertEquals("Skipped the wrong number of characters", 
+                stream.skipWhile(CharClass.of("Wdelor")), 5);
+        assertTrue("Reader stream not empty after skip", stream.isEmpty());
+    }
 }
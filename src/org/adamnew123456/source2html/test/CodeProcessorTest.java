@@ -0,0 +1,178 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.BuildManifest;
+import org.adamnew123456.source2html.CodeProcessor;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class CodeProcessorTest {
+    private static final int PACKAGES = 4;
+    private static final int FILES_PER_PACKAGE = 6;
+    
+    /**
+     * Writes a small tree of sources, spread over a few packages, and returns
+     * its root.
+     */
+    private Path writeTree() throws IOException {
+        Path root = Files.createTempDirectory("processor");
+        for (int pkg = 0; pkg < PACKAGES; pkg++) {
+            for (int file = 0; file < FILES_PER_PACKAGE; file++) {
+                Path path = root.resolve("src/pkg" + pkg + "/Class" + file + ".java");
+                Files.createDirectories(path.getParent());
+                
+                String code = String.format(
+                        "package pkg%d;\n\n" +
+                        "/** Class number %d. */\n" +
+                        "public class Class%d {\n" +
+                        "    private String name = \"class <%d>\";\n" +
+                        "    public int size() { return %d; } // size\n" +
+                        "}\n",
+                        pkg, file, file, file, file * pkg);
+                Files.write(path, code.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        
+        return root;
+    }
+    
+    /**
+     * Renders the tree into a new directory, with the given processor.
+     */
+    private Path render(CodeProcessor processor, Path tree) throws IOException {
+        Path outDir = Files.createTempDirectory("rendered");
+        processor.run(tree.toFile(), outDir.toFile(), "/");
+        return outDir;
+    }
+    
+    /**
+     * Returns the paths of all the files under the root, relative to it and
+     * in sorted order.
+     */
+    private List<String> listFiles(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> root.relativize(path).toString().replace(File.separatorChar, '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+    
+    /**
+     * Checks that both directories have the same files, with the same bytes.
+     */
+    private void assertSameOutput(String message, Path actual, Path expected)
+            throws IOException {
+        List<String> files = listFiles(expected);
+        assertEquals(message + ": different files", listFiles(actual), files);
+        
+        for (String file: files) {
+            assertTrue(message + ": " + file + " differs",
+                    Arrays.equals(Files.readAllBytes(actual.resolve(file)),
+                            Files.readAllBytes(expected.resolve(file))));
+        }
+    }
+    
+    @Test
+    public void testOutputDoesNotDependOnWorkers() throws IOException {
+        Path tree = writeTree();
+        
+        CodeProcessor single = new CodeProcessor();
+        single.setWorkers(1);
+        Path expected = render(single, tree);
+        
+        List<String> pages = new ArrayList<>();
+        for (String file: listFiles(expected)) {
+            if (file.endsWith(".html") && !file.equals("index.html")) {
+                pages.add(file);
+            }
+        }
+        
+        assertEquals("Wrong page count", pages.size(), PACKAGES * FILES_PER_PACKAGE);
+        
+        for (int workers: new int[] {2, 4, 8}) {
+            CodeProcessor parallel = new CodeProcessor();
+            parallel.setWorkers(workers);
+            assertSameOutput(workers + " workers", render(parallel, tree), expected);
+        }
+    }
+    
+    @Test
+    public void testPerFileIOMatchesPooled() throws IOException {
+        Path tree = writeTree();
+        
+        CodeProcessor pooled = new CodeProcessor();
+        pooled.setIOMode(CodeProcessor.IOMode.POOLED);
+        Path expected = render(pooled, tree);
+        
+        CodeProcessor perFile = new CodeProcessor();
+        perFile.setIOMode(CodeProcessor.IOMode.PER_FILE);
+        perFile.setWorkers(2);
+        assertSameOutput("Per-file I/O", render(perFile, tree), expected);
+    }
+    
+    @Test
+    public void testIncrementalRunOnlyRendersChanges() throws IOException {
+        Path tree = writeTree();
+        Path outDir = Files.createTempDirectory("rendered");
+        
+        CodeProcessor first = new CodeProcessor();
+        first.setIncremental(true);
+        first.run(tree.toFile(), outDir.toFile(), "/");
+        
+        // Backdate everything, so that rewritten files can be told apart
+        FileTime old = FileTime.fromMillis(0);
+        for (String file: listFiles(outDir)) {
+            Files.setLastModifiedTime(outDir.resolve(file), old);
+        }
+        
+        Files.delete(tree.resolve("src/pkg0/Class0.java"));
+        Files.write(tree.resolve("src/pkg1/Class1.java"),
+                "package moved;\n\npublic class Class1 {}\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(tree.resolve("src/pkg2/Class2.java"),
+                "package pkg2;\n\npublic class Class2 { int edited; }\n".getBytes(StandardCharsets.UTF_8));
+        
+        CodeProcessor second = new CodeProcessor();
+        second.setIncremental(true);
+        second.run(tree.toFile(), outDir.toFile(), "/");
+        
+        assertFalse("Removed source kept its page",
+                Files.exists(outDir.resolve("pkg0/Class0.html")));
+        assertFalse("Moved source kept its old page",
+                Files.exists(outDir.resolve("pkg1/Class1.html")));
+        assertTrue("Moved source has no new page",
+                Files.exists(outDir.resolve("moved/Class1.html")));
+        
+        assertEquals("Unchanged source was rendered again",
+                Files.getLastModifiedTime(outDir.resolve("pkg3/Class3.html")), old);
+        assertFalse("Changed source wasn't rendered again",
+                Files.getLastModifiedTime(outDir.resolve("pkg2/Class2.html")).equals(old));
+        assertFalse("Index wasn't rendered again",
+                Files.getLastModifiedTime(outDir.resolve("index.html")).equals(old));
+        
+        String index = new String(Files.readAllBytes(outDir.resolve("index.html")),
+                StandardCharsets.UTF_8);
+        assertTrue("Index doesn't list the moved source", 
+                index.contains("/moved/Class1.html"));
+        assertFalse("Index still lists the removed source", 
+                index.contains("/pkg0/Class0.html"));
+        
+        // Apart from the manifest, the output is what a full run would give
+        CodeProcessor full = new CodeProcessor();
+        Path expected = render(full, tree);
+        Files.delete(outDir.resolve(BuildManifest.FILE_NAME));
+        Files.delete(expected.resolve(BuildManifest.FILE_NAME));
+        assertSameOutput("Incremental run", outDir, expected);
+    }
+}
@@ -0,0 +1,85 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.syntax.IncrementalLexer;
+import org.adamnew123456.source2html.syntax.JavaLexer;
+import org.adamnew123456.source2html.syntax.PackedTokens;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class IncrementalLexerTest {
+    private static String BASE = 
+            "package a;\n" +
+            "/* a block\n" +
+            " * comment */\n" +
+            "class A {\n" +
+            "    String s = \"x\"; // line\n" +
+            "    char c = 'y';\n" +
+            "}\n";
+    
+    /**
+     * Checks that the incremental lexer has the same tokens as lexing its
+     * source from scratch.
+     */
+    private void assertMatchesFullLex(String message, IncrementalLexer lexer) {
+        PackedTokens expected = new JavaLexer(lexer.getSource()).lexAll();
+        PackedTokens actual = lexer.getTokens();
+        
+        assertEquals(message + ": wrong size", actual.size(), expected.size());
+        assertEquals(message + ": wrong line count", 
+                actual.getLineCount(), expected.getLineCount());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(message + ": wrong token", actual.getToken(i), expected.getToken(i));
+        }
+        
+        for (int line = 0; line < expected.getLineCount(); line++) {
+            assertEquals(message + ": wrong line start",
+                    actual.getLineStart(line), expected.getLineStart(line));
+        }
+    }
+    
+    @Test
+    public void testEditOneLine() {
+        IncrementalLexer lexer = new IncrementalLexer(BASE);
+        IncrementalLexer.Change change = lexer.update(BASE.replace("'y'", "'z'"));
+        
+        assertMatchesFullLex("Single line edit", lexer);
+        assertEquals("Wrong first line", change.getFirstLine(), 5);
+        assertEquals("Wrong old end line", change.getOldEndLine(), 6);
+        assertEquals("Wrong new end line", change.getNewEndLine(), 6);
+    }
+    
+    @Test
+    public void testUnclosingComment() {
+        IncrementalLexer lexer = new IncrementalLexer(BASE);
+        lexer.update(BASE.replace("*/", "*"));
+        assertMatchesFullLex("Removing a comment's end", lexer);
+        
+        lexer.update(BASE);
+        assertMatchesFullLex("Putting a comment's end back", lexer);
+    }
+    
+    @Test
+    public void testRandomEdits() {
+        String alphabet = "ab/*\"'\n x";
+        Random random = new Random(2468);
+        IncrementalLexer lexer = new IncrementalLexer(BASE);
+        
+        for (int i = 0; i < 2000; i++) {
+            String source = lexer.getSource();
+            int start = random.nextInt(source.length() + 1);
+            int end = Math.min(source.length(), start + random.nextInt(4));
+            
+            StringBuilder inserted = new StringBuilder();
+            int length = random.nextInt(4);
+            for (int j = 0; j < length; j++) {
+                inserted.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            
+            String edited = source.substring(0, start) + inserted + source.substring(end);
+            lexer.update(edited);
+            assertMatchesFullLex("Edit " + i + " of `" + edited + "`", lexer);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.JavaFile;
+import org.adamnew123456.source2html.PackageRegistry;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class JavaFileTest {
+    /**
+     * Checks that the file has the same lines as a BufferedReader would
+     * split the code into.
+     */
+    private void assertSameLines(String code) throws IOException {
+        List<String> expected = new BufferedReader(new StringReader(code))
+                .lines()
+                .collect(Collectors.toList());
+        
+        JavaFile file = new JavaFile(new StringReader(code), "Test.java", new PackageRegistry());
+        assertEquals("Wrong line count", file.getLineCount(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Wrong line", file.getLine(i).toString(), expected.get(i));
+        }
+        
+        assertEquals("Wrong source", file.getSource(), String.join("\n", expected));
+    }
+    
+    @Test
+    public void testLineEndings() throws IOException {
+        assertSameLines("");
+        assertSameLines("\n");
+        assertSameLines("class A {}");
+        assertSameLines("class A {}\n");
+        assertSameLines("a\n\nb\n\n");
+        assertSameLines("a\r\nb\rc\n\rd\r\n\r\n");
+        assertSameLines("\r");
+    }
+    
+    @Test
+    public void testFindsPackage() throws IOException {
+        JavaFile file = new JavaFile(
+                new StringReader("// header\npackage a.b.c;\nclass A {}\n"), "A.java",
+                new PackageRegistry());
+        assertEquals("Wrong package", file.getPackage().getName(), "a.b.c");
+        assertEquals("Wrong name", file.getName(), "A");
+    }
+    
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testLineOutOfRange() throws IOException {
+        new JavaFile(new StringReader("a\nb"), "A.java", new PackageRegistry()).getLine(2);
+    }
+    
+    /**
+     * Writes the bytes into a temporary Java file.
+     */
+    private Path writeFile(byte[] bytes) throws IOException {
+        Path path = Files.createTempFile("JavaFileTest", ".java");
+        Files.write(path, bytes);
+        return path;
+    }
+    
+    @Test
+    public void testDecodesWithCharset() throws IOException {
+        String code = "package cafe;\r\n// caf\u00e9\r\nclass \u00c9t\u00e9 {}\r\n";
+        
+        PackageRegistry registry = new PackageRegistry();
+        JavaFile utf8 = new JavaFile(writeFile(code.getBytes(StandardCharsets.UTF_8)), 
+                StandardCharsets.UTF_8, registry);
+        assertEquals("Wrong UTF-8 source", utf8.getSource(), 
+                "package cafe;\n// caf\u00e9\nclass \u00c9t\u00e9 {}");
+        assertEquals("Wrong UTF-8 package", utf8.getPackage().getName(), "cafe");
+        
+        JavaFile latin1 = new JavaFile(writeFile(code.getBytes(StandardCharsets.ISO_8859_1)), 
+                StandardCharsets.ISO_8859_1, registry);
+        assertEquals("Wrong Latin-1 source", latin1.getSource(), utf8.getSource());
+        assertTrue("Files in one package didn't share it", 
+                latin1.getPackage() == utf8.getPackage());
+    }
+    
+    @Test
+    public void testAsciiFile() throws IOException {
+        Path path = writeFile("package a;\n\nclass A {}\n".getBytes(StandardCharsets.US_ASCII));
+        PackageRegistry registry = new PackageRegistry();
+        JavaFile file = new JavaFile(path, StandardCharsets.UTF_8, registry);
+        assertEquals("Wrong source", file.getSource(), "package a;\n\nclass A {}");
+        assertEquals("Wrong line count", file.getLineCount(), 3);
+        assertEquals("Wrong line", file.getLine(2).toString(), "class A {}");
+        assertEquals("Wrong package", 
+                file.getPackage(), registry.fromPackageName("a"));
+    }
+    
+    @Test(expected=IOException.class)
+    public void testReportsBadEncoding() throws IOException {
+        byte[] latin1 = "class \u00c9 {}".getBytes(StandardCharsets.ISO_8859_1);
+        new JavaFile(writeFile(latin1), StandardCharsets.UTF_8, new PackageRegistry());
+    }
+}
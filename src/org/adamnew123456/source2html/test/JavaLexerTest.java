@@ -0,0 +1,203 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.syntax.JavaLexer;
+import org.adamnew123456.source2html.syntax.PackedTokens;
+import org.adamnew123456.source2html.syntax.ParallelLexer;
+import org.adamnew123456.source2html.syntax.Token;
+import org.adamnew123456.source2html.syntax.TokenType;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class JavaLexerTest {
+    /*
+     * Snippets which exercise each of the lexer's rules, including the ways
+     * that they can fail and fall back to other rules.
+     */
+    private static String[] SNIPPETS = new String[] {
+        "public static void main(String[] args) {}",
+        "int x = 1; // comment\nint y;",
+        "/* block\n * comment */ class",
+        "/** unterminated javadoc\n",
+        "/*/ still open */",
+        "char c = '\\n'; char d = '\\u0041'; char e = ''';",
+        "char bad = '\\q'; char empty = '';",
+        "String s = \"a \\\"quoted\\\" string\";",
+        "String t = \"unterminated\nnext line\";",
+        "String u = \"\\u12\" + \"\\0\";",
+        "a/b/*c*/d//e",
+        "",
+    };
+    
+    /**
+     * Lexes the code with the given engine, and returns all of the tokens.
+     */
+    private List<Token> lex(String code, JavaLexer.Engine engine) {
+        List<Token> tokens = new ArrayList<>();
+        for (Token token: new JavaLexer(code, engine)) {
+            tokens.add(token);
+        }
+        
+        return tokens;
+    }
+    
+    /**
+     * Checks that all the engines produce the same tokens for the given code.
+     */
+    private void assertEnginesAgree(String code) {
+        List<Token> expected = lex(code, JavaLexer.Engine.PARSERS);
+        assertEquals("Engines disagree on `" + code + "`",
+                lex(code, JavaLexer.Engine.STATE_TABLE), expected);
+        assertEquals("Compiled parsers disagree on `" + code + "`",
+                lex(code, JavaLexer.Engine.COMPILED_PARSERS), expected);
+    }
+    
+    @Test
+    public void testSnippets() {
+        for (String snippet: SNIPPETS) {
+            assertEnginesAgree(snippet);
+        }
+    }
+    
+    @Test
+    public void testRandomInput() {
+        String alphabet = "ab/*\\\"'\nu0123 xintfor\t{}";
+        Random random = new Random(1234);
+        
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder code = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                code.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            
+            assertEnginesAgree(code.toString());
+        }
+    }
+    
+    @Test
+    public void testTokenTypes() {
+        List<Token> tokens = lex("int/*x*/'y'\"z\"", JavaLexer.Engine.STATE_TABLE);
+        
+        assertEquals("Wrong tokens for mixed input", tokens,
+                Arrays.asList(new Token[] {
+                    new Token("int", TokenType.KEYWORD),
+                    new Token("/*x*/", TokenType.COMMENT),
+                    new Token("'y'", TokenType.CHARACTER),
+                    new Token("\"z\"", TokenType.STRING),
+                }));
+    }
+    
+    @Test
+    public void testRawRunsMerge() {
+        List<Token> tokens = lex("Foo bar;\n  Xint y", JavaLexer.Engine.PARSERS);
+        
+        assertEquals("Wrong tokens for RAW runs", tokens,
+                Arrays.asList(new Token[] {
+                    new Token("Foo bar;\n", TokenType.RAW),
+                    new Token("  X", TokenType.RAW),
+                    new Token("int", TokenType.KEYWORD),
+                    new Token(" y", TokenType.RAW),
+                }));
+    }
+    
+    @Test
+    public void testPackedTokens() {
+        for (String snippet: SNIPPETS) {
+            List<Token> tokens = lex(snippet, JavaLexer.Engine.STATE_TABLE);
+            PackedTokens packed = new JavaLexer(snippet).lexAll();
+            
+            assertEquals("Packed tokens have the wrong size", packed.size(), tokens.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                assertEquals("Packed token doesn't match", packed.getToken(i), tokens.get(i));
+            }
+        }
+    }
+    
+    @Test
+    public void testPackedLines() {
+        PackedTokens packed = new JavaLexer("int x;\n/* a\nb */ y\n").lexAll();
+        
+        assertEquals("Wrong number of lines", packed.getLineCount(), 3);
+        assertEquals("Wrong first token of third line", 
+                packed.getToken(packed.getLineStart(2)),
+                new Token("b */", TokenType.COMMENT));
+        assertEquals("Wrong end of third line", packed.getLineEnd(2), packed.size());
+    }
+    
+    @Test
+    public void testReaderMatchesString() {
+        // Make the code long enough to go through the reader's window a 
+        // few times over
+        StringBuilder code = new StringBuilder();
+        Random random = new Random(4321);
+        while (code.length() < 50000) {
+            code.append(SNIPPETS[random.nextInt(SNIPPETS.length)]).append('\n');
+        }
+        
+        List<Token> streamed = new ArrayList<>();
+        for (Token token: new JavaLexer(new StringReader(code.toString()))) {
+            streamed.add(token);
+        }
+        
+        assertEquals("Reader lexer disagrees with String lexer",
+                streamed, lex(code.toString(), JavaLexer.Engine.STATE_TABLE));
+    }
+    
+    @Test
+    public void testReaderUnterminatedComment() {
+        // The comment is never closed, so the reader lexer has to scan all
+        // the way to the end before it knows that the slash is just a slash -
+        // which means holding all of it in the window at once
+        StringBuilder code = new StringBuilder("class A {} /* never closed\n");
+        while (code.length() < 1000000) {
+            code.append("    int x = y * 2 / z; // \"text\" 'c'\n");
+        }
+        
+        List<Token> streamed = new ArrayList<>();
+        for (Token token: new JavaLexer(new StringReader(code.toString()))) {
+            streamed.add(token);
+        }
+        
+        assertEquals("Reader lexer disagrees with String lexer on unterminated comment",
+                streamed, lex(code.toString(), JavaLexer.Engine.STATE_TABLE));
+    }
+    
+    @Test
+    public void testParallelMatchesSequential() {
+        // Mix in comments which run over several lines, so that some of the 
+        // chunks start in the wrong state
+        StringBuilder code = new StringBuilder();
+        Random random = new Random(8765);
+        for (int i = 0; i < 300; i++) {
+            code.append(SNIPPETS[random.nextInt(SNIPPETS.length)]).append('\n');
+            if (random.nextInt(10) == 0) {
+                code.append("/* a\n long\n comment */ int z;\n");
+            }
+        }
+        
+        String text = code.toString();
+        PackedTokens expected = new JavaLexer(text).lexAll();
+        for (int chunkSize: new int[] {1, 7, 64, 1000}) {
+            PackedTokens actual = ParallelLexer.lexAll(text, chunkSize);
+            
+            assertEquals("Parallel lexer has the wrong size", actual.size(), expected.size());
+            assertEquals("Parallel lexer has the wrong line count",
+                    actual.getLineCount(), expected.getLineCount());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals("Parallel lexer token doesn't match", 
+                        actual.getToken(i), expected.getToken(i));
+            }
+            
+            for (int line = 0; line < expected.getLineCount(); line++) {
+                assertEquals("Parallel lexer line doesn't match",
+                        actual.getLineStart(line), expected.getLineStart(line));
+            }
+        }
+    }
+}
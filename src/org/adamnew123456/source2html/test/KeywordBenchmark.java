@@ -0,0 +1,102 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.syntax.JavaLexer;
+import org.adamnew123456.source2html.syntax.KeywordTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares looking up words in a KeywordTable against looking them up in the
+ * keyword list, which is how the lexer used to do it. This isn't a test, and
+ * has to be run by hand:
+ * 
+ *     java org.adamnew123456.source2html.test.KeywordBenchmark
+ */
+public class KeywordBenchmark {
+    private static final int WORDS = 100000;
+    private static final int ROUNDS = 20;
+    
+    // The keywords that the lexer looks for, copied into a plain list like
+    // the one it used to search
+    private static List<String> keywords = new ArrayList<>(JavaLexer.getKeywords());
+    
+    public static void main(String[] args) {
+        // Build a source which is half keywords and half other lowercase
+        // words, separated by spaces, and remember where each word is
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        int[] starts = new int[WORDS];
+        int[] lengths = new int[WORDS];
+        
+        for (int i = 0; i < WORDS; i++) {
+            String word;
+            if (random.nextBoolean()) {
+                word = keywords.get(random.nextInt(keywords.size()));
+            } else {
+                char[] chars = new char[1 + random.nextInt(10)];
+                for (int j = 0; j < chars.length; j++) {
+                    chars[j] = (char)('a' + random.nextInt(26));
+                }
+                
+                word = new String(chars);
+            }
+            
+            starts[i] = builder.length();
+            lengths[i] = word.length();
+            builder.append(word).append(' ');
+        }
+        
+        String source = builder.toString();
+        KeywordTable table = new KeywordTable(keywords);
+        List<Long> listTimes = new ArrayList<>();
+        List<Long> tableTimes = new ArrayList<>();
+        int listFound = 0;
+        int tableFound = 0;
+        
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = System.nanoTime();
+            listFound = 0;
+            for (int i = 0; i < WORDS; i++) {
+                String word = source.substring(starts[i], starts[i] + lengths[i]);
+                if (keywords.contains(word)) {
+                    listFound++;
+                }
+            }
+            
+            listTimes.add(System.nanoTime() - before);
+            
+            before = System.nanoTime();
+            tableFound = 0;
+            for (int i = 0; i < WORDS; i++) {
+                if (table.contains(source, starts[i], lengths[i])) {
+                    tableFound++;
+                }
+            }
+            
+            tableTimes.add(System.nanoTime() - before);
+        }
+        
+        if (listFound != tableFound) {
+            throw new IllegalStateException(
+                    String.format("List found %d keywords, table found %d",
+                            listFound, tableFound));
+        }
+        
+        // The first half of the rounds are just there to warm up the JIT
+        System.out.printf("list:  %.1f ns/word%n", best(listTimes) / (double)WORDS);
+        System.out.printf("table: %.1f ns/word%n", best(tableTimes) / (double)WORDS);
+    }
+    
+    /**
+     * Returns the fastest of the times from the second half of the rounds.
+     */
+    private static long best(List<Long> times) {
+        long best = Long.MAX_VALUE;
+        for (int i = times.size() / 2; i < times.size(); i++) {
+            best = Math.min(best, times.get(i));
+        }
+        
+        return best;
+    }
+}
@@ -0,0 +1,47 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.syntax.KeywordTable;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class KeywordTableTest {
+    private List<String> keywords = Arrays.asList(new String[] {
+        "class", "if", "int", "interface", "var", "record", "yield",
+    });
+    
+    @Test
+    public void testFindsEveryKeyword() {
+        KeywordTable table = new KeywordTable(keywords);
+        for (String keyword: keywords) {
+            assertTrue("Missing keyword " + keyword, table.contains(keyword));
+        }
+    }
+    
+    @Test
+    public void testRejectsNonKeywords() {
+        KeywordTable table = new KeywordTable(keywords);
+        for (String word: new String[] {"", "i", "in", "inte", "interfaces", "klass", "Class"}) {
+            assertFalse("Found non-keyword " + word, table.contains(word));
+        }
+    }
+    
+    @Test
+    public void testLooksUpSourceRanges() {
+        KeywordTable table = new KeywordTable(keywords);
+        String source = "public interface Foo { int x; }";
+        
+        assertTrue("Range keyword not found", table.contains(source, 7, 9));
+        assertTrue("Range keyword not found", table.contains(source, 23, 3));
+        assertFalse("Partial range found", table.contains(source, 7, 8));
+        assertFalse("Non-keyword range found", table.contains(source, 17, 3));
+    }
+    
+    @Test
+    public void testEmptyTable() {
+        KeywordTable table = new KeywordTable(Arrays.asList(new String[0]));
+        assertFalse("Empty table found a word", table.contains("if"));
+    }
+}
@@ -0,0 +1,49 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.syntax.JavaLexer;
+
+/**
+ * Compares how quickly each of the lexer's engines gets through the same
+ * source. This isn't a test, and has to be run by hand:
+ * 
+ *     java org.adamnew123456.source2html.test.LexerBenchmark
+ */
+public class LexerBenchmark {
+    private static final int COPIES = 2000;
+    private static final int ROUNDS = 40;
+    
+    private static final String SAMPLE =
+            "/*\n * A block comment, which runs over\n * several lines.\n */\n" +
+            "public class Sample extends Base implements Runnable {\n" +
+            "    // A line comment\n" +
+            "    private static final String NAME = \"sample \\\"name\\\"\\n\";\n" +
+            "    private char separator = '\\t';\n" +
+            "    private char unicode = '\\u0041';\n" +
+            "    \n" +
+            "    public void run() {\n" +
+            "        for (int i = 0; i < 10; i++) {\n" +
+            "            if (i % 2 == 0) System.out.println(NAME + i);\n" +
+            "        }\n" +
+            "    }\n" +
+            "}\n";
+    
+    public static void main(String[] args) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < COPIES; i++) {
+            builder.append(SAMPLE);
+        }
+        
+        String source = builder.toString();
+        for (JavaLexer.Engine engine: JavaLexer.Engine.values()) {
+            long best = Long.MAX_VALUE;
+            int tokens = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long before = System.nanoTime();
+                tokens = new JavaLexer(source, engine).lexAll().size();
+                best = Math.min(best, System.nanoTime() - before);
+            }
+            
+            System.out.printf("%-16s %6.1f ms (%d tokens)%n", 
+                    engine, best / 1e6, tokens);
+        }
+    }
+}
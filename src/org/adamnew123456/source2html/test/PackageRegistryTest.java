@@ -0,0 +1,65 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.JavaFile;
+import org.adamnew123456.source2html.Package;
+import org.adamnew123456.source2html.PackageRegistry;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class PackageRegistryTest {
+    @Test
+    public void testSameNameSamePackage() {
+        PackageRegistry registry = new PackageRegistry();
+        List<Package> found = IntStream.range(0, 10000)
+                .parallel()
+                .mapToObj(i -> registry.fromPackageName("pkg" + (i % 10)))
+                .collect(Collectors.toList());
+        
+        for (Package pkg: found) {
+            assertTrue("Package was not reused", 
+                    pkg == registry.fromPackageName(pkg.getName()));
+        }
+        
+        assertEquals("Wrong package count", registry.getPackages().size(), 10);
+    }
+    
+    @Test
+    public void testRegistriesAreSeparate() {
+        PackageRegistry first = new PackageRegistry();
+        PackageRegistry second = new PackageRegistry();
+        first.fromPackageName("a");
+        
+        assertEquals("Package leaked between registries", second.getPackages().size(), 0);
+        assertTrue("Registries shared a package", 
+                first.fromPackageName("b") != second.fromPackageName("b"));
+    }
+    
+    @Test
+    public void testCountsFiles() throws IOException {
+        PackageRegistry registry = new PackageRegistry();
+        new JavaFile(new StringReader("package a;\nclass A {}"), "A.java", registry);
+        new JavaFile(new StringReader("package a;\nclass B {}"), "B.java", registry);
+        new JavaFile(new StringReader("package b;\nclass C { int x; }"), "C.java", registry);
+        new JavaFile(new StringReader("class D {}"), "D.java", registry);
+        
+        Package a = registry.fromPackageName("a");
+        assertEquals("Wrong file count", a.getFileCount(), 2);
+        assertEquals("Wrong size", a.getSourceSize(), 42L);
+    }
+    
+    @Test
+    public void testFilesSharePackages() throws IOException {
+        PackageRegistry registry = new PackageRegistry();
+        JavaFile first = new JavaFile(new StringReader("package a;\nclass A {}"), "A.java", registry);
+        JavaFile second = new JavaFile(new StringReader("package a;\nclass B {}"), "B.java", registry);
+        
+        assertTrue("Files didn't share a package", first.getPackage() == second.getPackage());
+        assertEquals("Wrong package count", registry.getPackages().size(), 1);
+    }
+}
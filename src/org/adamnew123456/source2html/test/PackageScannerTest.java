@@ -0,0 +1,71 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.syntax.PackageScanner;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+public class PackageScannerTest {
+    private String findPackage(String code) {
+        String found = PackageScanner.findPackage(new StringReader(code));
+        assertEquals("Reader and String disagree on `" + code + "`", 
+                PackageScanner.findPackage(code), found);
+        return found;
+    }
+    
+    @Test
+    public void testSimpleDeclaration() {
+        assertEquals("Wrong package", findPackage("package a.b.c;\nclass A {}"), "a.b.c");
+        assertEquals("Wrong package", findPackage("// header\n\npackage a;"), "a");
+    }
+    
+    @Test
+    public void testSplitDeclaration() {
+        assertEquals("Wrong package", 
+                findPackage("package a\n  .b /* why */ . c\n;"), "a.b.c");
+        assertEquals("Wrong package", 
+                findPackage("@Deprecated(\"x\")\npackage a.b;"), "a.b");
+    }
+    
+    @Test
+    public void testIgnoresCommentsAndStrings() {
+        assertEquals("Wrong package", 
+                findPackage("/*\npackage wrong;\n*/\npackage right;"), "right");
+        assertEquals("Wrong package", 
+                findPackage("// package wrong;\nclass A { String s = \"package x;\"; }"), 
+                null);
+    }
+    
+    @Test
+    public void testDefaultPackage() {
+        assertEquals("Wrong package", findPackage(""), null);
+        assertEquals("Wrong package", findPackage("import a.b;\npackage c;"), null);
+        assertEquals("Wrong package", findPackage("public final class A {}"), null);
+        assertEquals("Wrong package", findPackage("package a b;"), null);
+        assertEquals("Wrong package", findPackage("package a..b;"), null);
+    }
+    
+    @Test
+    public void testStopsAtTypeDeclaration() {
+        StringBuilder code = new StringBuilder("package a;\nclass A {\n");
+        while (code.length() < 1000000) {
+            code.append("    int x = 1;\n");
+        }
+        
+        int[] charsRead = new int[1];
+        Reader reader = new StringReader(code.toString()) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                charsRead[0] += Math.max(count, 0);
+                return count;
+            }
+        };
+        
+        assertEquals("Wrong package", PackageScanner.findPackage(reader), "a");
+        assertTrue("Read the whole file", charsRead[0] < code.length() / 10);
+    }
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import java.util.Optional;
+import java.util.Random;
 
 public class ParserTests {
     /**
@@ -273,4 +274,194 @@ public class ParserTests {
         assertEquals("Incorrect parse leftover for NegativeLookaheadParser",
                 stream.toString(), ". lmno");
     }
+    
+    @Test
+    public void testMatchLengthSuccess() {
+        Parser group = new SequenceParser(new GroupParser("a"),
+                new ZeroOrMoreParser(new GroupParser("b")));
+        CheckpointStream stream = toStream("abbbc");
+        int result = group.tryMatch(stream);
+        
+        assertEquals("Incorrect match length for SequenceParser",
+                result, 4);
+        assertEquals("Incorrect match leftover for SequenceParser",
+                stream.toString(), "c");
+        assertEquals("Incorrect matched text for SequenceParser",
+                stream.slice(0, result), "abbb");
+    }
+    
+    @Test
+    public void testMatchLengthFailure() {
+        Parser group = new SequenceParser(new GroupParser("a"), new GroupParser("b"));
+        CheckpointStream stream = toStream("ac");
+        int result = group.tryMatch(stream);
+        
+        assertEquals("Incorrect match length for SequenceParser",
+                result, Parser.NO_MATCH);
+        assertEquals("Incorrect match leftover for SequenceParser",
+                stream.toString(), "ac");
+    }
+    
+    @Test
+    public void testMatchLengthEmpty() {
+        Parser group = new ZeroOrOneParser(new GroupParser("a"));
+        CheckpointStream stream = toStream("b");
+        int result = group.tryMatch(stream);
+        
+        assertEquals("Incorrect match length for ZeroOrOneParser",
+                result, 0);
+        assertEquals("Incorrect match leftover for ZeroOrOneParser",
+                stream.toString(), "b");
+    }
+    
+    @Test
+    public void testCharClassOperations() {
+        CharClass ident = CharClass.range('a', 'z')
+                .union(CharClass.range('A', 'Z'))
+                .union(CharClass.of("_$\u00e9"));
+        
+        assertTrue("Class is missing a lowercase letter", ident.contains('q'));
+        assertTrue("Class is missing an uppercase letter", ident.contains('Q'));
+        assertTrue("Class is missing a symbol", ident.contains('$'));
+        assertTrue("Class is missing a non-ASCII letter", ident.contains('\u00e9'));
+        assertFalse("Class has an extra digit", ident.contains('7'));
+        assertFalse("Class has an extra non-ASCII letter", ident.contains('\u00e8'));
+        
+        CharClass other = ident.negate();
+        assertFalse("Negated class kept a letter", other.contains('q'));
+        assertTrue("Negated class is missing a digit", other.contains('7'));
+        assertTrue("Negated class is missing a non-ASCII letter", other.contains('\u00e8'));
+        assertEquals("Double negation is wrong", other.negate(), ident);
+    }
+    
+    @Test
+    public void testCharClassGroupParser() {
+        Parser group = new SequenceParser(
+                new GroupParser(CharClass.range('a', 'c')),
+                new NegativeGroupParser(CharClass.range('a', 'c')));
+        CheckpointStream stream = toStream("bxa");
+        Optional<String> result = group.tryParse(stream);
+        
+        assertEquals("Incorrect parse result for CharClass groups",
+                result, Optional.of("bx"));
+        assertEquals("Incorrect parse leftover for CharClass groups",
+                stream.toString(), "a");
+    }
+    
+    /**
+     * A parser which counts how many times it has been run.
+     */
+    private static class CountingParser extends MatchingParser {
+        private final Parser inner;
+        int runs = 0;
+        
+        CountingParser(Parser inner) {
+            this.inner = inner;
+        }
+        
+        @Override
+        public int tryMatch(CheckpointStream stream) {
+            runs++;
+            return inner.tryMatch(stream);
+        }
+    }
+    
+    @Test
+    public void testMemoizingParserReusesResults() {
+        MemoTable table = new MemoTable(16);
+        CountingParser digits = new CountingParser(
+                new OneOrMoreParser(new GroupParser(CharClass.range('0', '9'))));
+        Parser memoized = new MemoizingParser(digits, table);
+        
+        // The first choice fails after the digits, so the second runs them again
+        Parser group = new EitherParser(
+                new SequenceParser(memoized, new GroupParser("x")),
+                new SequenceParser(memoized, new GroupParser("y")));
+        CheckpointStream stream = toStream("123y");
+        Optional<String> result = group.tryParse(stream);
+        
+        assertEquals("Incorrect parse result for MemoizingParser",
+                result, Optional.of("123y"));
+        assertEquals("Memoized parser was run again", digits.runs, 1);
+        assertEquals("Incorrect hit count", table.getHits(), 1L);
+        assertEquals("Incorrect miss count", table.getMisses(), 1L);
+    }
+    
+    @Test
+    public void testMemoTableForgetsChangedStreams() {
+        MemoTable table = new MemoTable(16);
+        CountingParser letters = new CountingParser(
+                new ZeroOrMoreParser(new GroupParser("a")));
+        Parser memoized = new MemoizingParser(letters, table);
+        
+        CheckpointStream stream = toStream("aa");
+        stream.checkpoint();
+        assertEquals("Incorrect match length", memoized.tryMatch(stream), 2);
+        stream.restore();
+        
+        // Adding to the stream changes what the parser would match
+        stream.extend("a");
+        assertEquals("Stale match length", memoized.tryMatch(stream), 3);
+        assertEquals("Changed stream was not reparsed", letters.runs, 2);
+        assertEquals("Incorrect hit count", table.getHits(), 0L);
+    }
+    
+    @Test
+    public void testMemoTableIsBounded() {
+        MemoTable table = new MemoTable(4);
+        Parser memoized = new MemoizingParser(new AnyCharParser(), table);
+        CheckpointStream stream = toStream("abcdefghijklmnop");
+        while (!stream.isEmpty()) {
+            memoized.tryMatch(stream);
+        }
+        
+        assertEquals("Incorrect table capacity", table.getCapacity(), 4);
+        assertTrue("Nothing was evicted", table.getEvictions() >= 12);
+    }
+    
+    @Test
+    public void testCompiledParsersAgree() {
+        Parser ab = new GroupParser("ab");
+        Parser star = new GroupParser("*");
+        Parser slash = new GroupParser("/");
+        Parser[] trees = new Parser[] {
+            new AnyCharParser(),
+            new NegativeGroupParser("ab"),
+            new EitherParser(new SequenceParser(ab, ab), ab, star),
+            new SequenceParser(ab, new ZeroOrOneParser(star), slash),
+            new ZeroOrMoreParser(new EitherParser(ab, star)),
+            new OneOrMoreParser(new SequenceParser(ab, star)),
+            new SequenceParser(slash, star,
+                    new NegativeLookaheadParser(new SequenceParser(star, slash),
+                            new AnyCharParser()),
+                    star, slash),
+            new NegativeLookaheadParser(ab, new NegativeGroupParser("/")),
+        };
+        
+        Parser[] compiledTrees = new Parser[trees.length];
+        for (int i = 0; i < trees.length; i++) {
+            compiledTrees[i] = ParserCompiler.compile(trees[i]);
+        }
+        
+        String alphabet = "ab*/x";
+        Random random = new Random(5678);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            
+            for (int k = 0; k < trees.length; k++) {
+                CheckpointStream expected = toStream(text.toString());
+                CheckpointStream actual = toStream(text.toString());
+                
+                assertEquals("Incorrect match length for compiled parser on `" + text + "`",
+                        compiledTrees[k].tryMatch(actual), trees[k].tryMatch(expected));
+                assertEquals("Incorrect match leftover for compiled parser on `" + text + "`",
+                        actual.toString(), expected.toString());
+                assertFalse("Compiled parser left a checkpoint", actual.isCheckpointed());
+            }
+        }
+    }
 }
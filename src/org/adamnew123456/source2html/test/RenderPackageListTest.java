@@ -0,0 +1,39 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.JavaFile;
+import org.adamnew123456.source2html.Package;
+import org.adamnew123456.source2html.PackageRegistry;
+import org.adamnew123456.source2html.render.RenderPackageList;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RenderPackageListTest {
+    @Test
+    public void testFilesMatchFileNames() throws IOException {
+        PackageRegistry registry = new PackageRegistry();
+        Package empty = registry.fromPackageName("empty");
+        List<JavaFile> files = Arrays.asList(
+                new JavaFile(new StringReader("package a;\nclass A {}"), "A.java", registry),
+                new JavaFile(new StringReader("package a;\nclass B {}"), "B.java", registry),
+                new JavaFile(new StringReader("package b;\nclass C {}"), "C.java", registry));
+        
+        Map<Package, List<String>> fileNames = new HashMap<>();
+        fileNames.put(empty, Collections.emptyList());
+        fileNames.put(registry.fromPackageName("a"), Arrays.asList("A", "B"));
+        fileNames.put(registry.fromPackageName("b"), Arrays.asList("C"));
+        
+        String fromFiles = new RenderPackageList(
+                Arrays.asList(empty), files, "/").toHTML();
+        String fromNames = new RenderPackageList(fileNames, "/").toHTML();
+        assertEquals("Package lists differ", fromFiles, fromNames);
+        assertTrue("Empty package wasn't listed", fromFiles.contains("files-empty"));
+    }
+}
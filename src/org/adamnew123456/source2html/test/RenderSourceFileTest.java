@@ -0,0 +1,56 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.JavaFile;
+import org.adamnew123456.source2html.PackageRegistry;
+import org.adamnew123456.source2html.render.RenderSourceFile;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public class RenderSourceFileTest {
+    private static final String SAMPLE =
+            "package sample;\n" +
+            "\n" +
+            "/* A <block>\n" +
+            " * comment & more */\n" +
+            "public class Sample {\n" +
+            "    // Line \"comment\"\n" +
+            "    private String text = \"a \\\"quoted\\\" <b>\";\n" +
+            "    private char tab = '\\t';\n" +
+            "    int count = 10;\n" +
+            "}\n";
+    
+    // This is what toHTML returned for the sample before pages were
+    // streamed into an Appendable
+    private static final String SAMPLE_HTML =
+            "<pre class=\"code\">\n" +
+            "<span class=\"lineNumber\">1</span><span class=\"code-keyword\">package</span><span class=\"code-raw\"> sample;\n" +
+            "</span><span class=\"lineNumber\">2</span><span class=\"code-raw\">\n" +
+            "</span><span class=\"lineNumber\">3</span><span class=\"code-comment\">/* A &lt;block&gt;\n" +
+            "</span><span class=\"lineNumber\">4</span><span class=\"code-comment\"> * comment &amp; more */</span><span class=\"code-raw\">\n" +
+            "</span><span class=\"lineNumber\">5</span><span class=\"code-keyword\">public</span><span class=\"code-raw\"> </span><span class=\"code-keyword\">class</span><span class=\"code-raw\"> Sample {\n" +
+            "</span><span class=\"lineNumber\">6</span><span class=\"code-raw\">    </span><span class=\"code-comment\">// Line &quot;comment&quot;</span><span class=\"code-raw\">\n" +
+            "</span><span class=\"lineNumber\">7</span><span class=\"code-raw\">    </span><span class=\"code-keyword\">private</span><span class=\"code-raw\"> String text = </span><span class=\"code-string\">&quot;a \\&quot;quoted\\&quot; &lt;b&gt;&quot;</span><span class=\"code-raw\">;\n" +
+            "</span><span class=\"lineNumber\">8</span><span class=\"code-raw\">    </span><span class=\"code-keyword\">private</span><span class=\"code-raw\"> </span><span class=\"code-keyword\">char</span><span class=\"code-raw\"> tab = </span><span class=\"code-character\">&apos;\\t&apos;</span><span class=\"code-raw\">;\n" +
+            "</span><span class=\"lineNumber\">9</span><span class=\"code-raw\">    </span><span class=\"code-keyword\">int</span><span class=\"code-raw\"> count = 10;\n" +
+            "</span><span class=\"lineNumber\">10</span><span class=\"code-raw\">}</span></pre>";
+    
+    private RenderSourceFile newRender() throws IOException {
+        return new RenderSourceFile(new JavaFile(new StringReader(SAMPLE), "Sample.java",
+                new PackageRegistry()));
+    }
+    
+    @Test
+    public void testStreamingMatchesOldOutput() throws IOException {
+        StringBuilder out = new StringBuilder();
+        newRender().writeHTML(out);
+        assertEquals("Streamed page changed", out.toString(), SAMPLE_HTML);
+    }
+    
+    @Test
+    public void testStringMatchesStreaming() throws IOException {
+        assertEquals("String page changed", newRender().toHTML(), SAMPLE_HTML);
+    }
+}
@@ -0,0 +1,73 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.SourceWalker;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SourceWalkerTest {
+    /**
+     * Creates an empty file at each of the given paths under the root.
+     */
+    private void touch(Path root, String... files) throws IOException {
+        for (String file: files) {
+            Path path = root.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.createFile(path);
+        }
+    }
+    
+    /**
+     * Returns the paths relative to the root, as strings.
+     */
+    private List<String> relativize(Path root, List<Path> paths) {
+        List<String> names = new ArrayList<>();
+        for (Path path: paths) {
+            names.add(root.relativize(path).toString().replace('\\', '/'));
+        }
+        
+        return names;
+    }
+    
+    @Test
+    public void testFindsJavaFiles() throws IOException {
+        Path root = Files.createTempDirectory("walker");
+        touch(root, "A.java", "README", "a/B.java", "a/b/c/C.java", "a/b/notes.txt");
+        
+        List<Path> found = new SourceWalker(root).findAll();
+        assertEquals("Did not find the Java files in order",
+                relativize(root, found),
+                Arrays.asList("A.java", "a/B.java", "a/b/c/C.java"));
+    }
+    
+    @Test
+    public void testSkipsBuildOutput() throws IOException {
+        Path root = Files.createTempDirectory("walker");
+        touch(root, "build/Gen.java", "target/Gen.java", "a/target/Gen.java", 
+                "a/build/Gen.java", "a/builder/Kept.java", "a/Kept.java");
+        
+        List<Path> found = new SourceWalker(root).findAll();
+        assertEquals("Did not skip build output",
+                relativize(root, found),
+                Arrays.asList("a/Kept.java", "a/builder/Kept.java"));
+    }
+    
+    @Test
+    public void testCustomGlobs() throws IOException {
+        Path root = Files.createTempDirectory("walker");
+        touch(root, "main/A.java", "main/ATest.java", "test/B.java", "gen/C.java");
+        
+        SourceWalker walker = new SourceWalker(root, 
+                Arrays.asList("main/**", "test/**"),
+                Arrays.asList("**Test.java"));
+        assertEquals("Did not follow the globs",
+                relativize(root, walker.findAll()),
+                Arrays.asList("main/A.java", "test/B.java"));
+    }
+}
@@ -0,0 +1,124 @@
+package org.adamnew123456.source2html.test;
+import org.adamnew123456.source2html.syntax.dfa.CharSet;
+import org.adamnew123456.source2html.syntax.dfa.Regex;
+import org.adamnew123456.source2html.syntax.dfa.StateTable;
+import org.adamnew123456.source2html.syntax.parsing.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class StateTableTest {
+    /**
+     * Generates a CheckpointStream from some characters.
+     */
+    private CheckpointStream toStream(String in) {
+        return new CheckpointStream(in);
+    }
+    
+    /**
+     * Runs the table on the given text, and checks which rule matched and
+     * how long the match was.
+     */
+    private void assertMatches(String message, StateTable table, String text,
+            int rule, int length) {
+        long match = table.match(toStream(text));
+        assertTrue(message + ": nothing matched", match != StateTable.NO_MATCH);
+        assertEquals(message + ": wrong rule", StateTable.matchRule(match), rule);
+        assertEquals(message + ": wrong length", StateTable.matchLength(match), length);
+    }
+    
+    @Test
+    public void testCharSetOperations() {
+        CharSet lower = CharSet.range('a', 'z');
+        CharSet vowels = CharSet.of("aeiou");
+        
+        assertTrue("Range is missing a character", lower.contains('q'));
+        assertFalse("Range has an extra character", lower.contains('A'));
+        assertEquals("Intersection is wrong", lower.intersect(vowels), vowels);
+        assertEquals("Union is wrong", lower.union(vowels), lower);
+        assertFalse("Difference kept a removed character", 
+                lower.minus(vowels).contains('e'));
+        assertEquals("Double complement is wrong",
+                vowels.complement().complement(), vowels);
+        assertEquals("Complement of everything isn't empty",
+                CharSet.ALL.complement(), CharSet.EMPTY);
+    }
+    
+    @Test
+    public void testLongestMatchWins() {
+        StateTable table = StateTable.compile(
+                new GroupParser("ab").toRegex(),
+                new OneOrMoreParser(new GroupParser("ab")).toRegex());
+        
+        assertMatches("Longer match lost", table, "abba!", 1, 4);
+        assertMatches("Earlier rule lost a tie", table, "a!", 0, 1);
+    }
+    
+    @Test
+    public void testNoMatch() {
+        StateTable table = StateTable.compile(new GroupParser("ab").toRegex());
+        long match = table.match(toStream("xyz"));
+        
+        assertEquals("Table matched an invalid character", 
+                match, StateTable.NO_MATCH);
+    }
+    
+    @Test
+    public void testMatchDoesNotMoveStream() {
+        StateTable table = StateTable.compile(new AnyCharParser().toRegex());
+        CheckpointStream stream = toStream("xyz");
+        table.match(stream);
+        
+        assertEquals("Matching moved the stream", stream.toString(), "xyz");
+    }
+    
+    @Test
+    public void testTerminatedLookahead() {
+        Parser star = new GroupParser("*");
+        Parser slash = new GroupParser("/");
+        Parser comment = new SequenceParser(slash, star,
+                new NegativeLookaheadParser(new SequenceParser(star, slash),
+                        new AnyCharParser()),
+                star, slash);
+        
+        StateTable table = StateTable.compile(comment.toRegex());
+        assertMatches("Comment isn't matched", table, "/* a */ b */", 0, 7);
+        assertMatches("Comment with stars isn't matched", table, "/***/", 0, 5);
+        
+        long match = table.match(toStream("/* a"));
+        assertEquals("Unterminated comment was matched", match, StateTable.NO_MATCH);
+    }
+    
+    @Test
+    public void testCharLookahead() {
+        Parser quote = new GroupParser("\"");
+        Parser string = new SequenceParser(quote,
+                new NegativeLookaheadParser(quote,
+                        new EitherParser(
+                                new SequenceParser(new GroupParser("\\"), quote),
+                                new NegativeGroupParser("\\"))),
+                quote);
+        
+        StateTable table = StateTable.compile(string.toRegex());
+        assertMatches("String isn't matched", table, "\"a\\\"b\" c\"", 0, 6);
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnterminatedLookaheadUnsupported() {
+        Parser lookahead = new SequenceParser(new GroupParser("a"), new GroupParser("b"));
+        new NegativeLookaheadParser(lookahead, new AnyCharParser()).toRegex();
+    }
+    
+    @Test
+    public void testRegexSimplification() {
+        Regex a = Regex.chars(CharSet.of("a"));
+        
+        assertEquals("Union isn't idempotent", Regex.union(a, a), a);
+        assertEquals("Star isn't idempotent", 
+                Regex.star(Regex.star(a)), Regex.star(a));
+        assertEquals("Complement of nothing isn't anything",
+                Regex.complement(Regex.NOTHING), Regex.ANYTHING);
+        assertEquals("Empty isn't the identity of concat",
+                Regex.concat(Regex.EMPTY, a, Regex.EMPTY), a);
+    }
+}
@@ -59,4 +59,31 @@ public class TestToken {
                 listEq(newLine.splitLines(),
                         Arrays.asList(new Token[] { new Token("\n", TokenType.RAW)})));
     }
+    
+    @Test
+    public void testSplitTrailingNewlineToken() {
+        Token multiLine = new Token("foo\nbar\n", TokenType.RAW);
+        assertTrue("The token ending in a newline did not split correctly",
+                listEq(multiLine.splitLines(),
+                        Arrays.asList(new Token[] { new Token("foo\n", TokenType.RAW),
+                                                    new Token("bar\n", TokenType.RAW)
+                        })));
+    }
+    
+    @Test
+    public void testSplitSourceRangeToken() {
+        String source = "xxfoo\nbar\nyy";
+        Token range = new Token(source, 2, 8, TokenType.COMMENT);
+        List<Token> lines = range.splitLines();
+        
+        assertTrue("The source range token did not split correctly",
+                listEq(lines,
+                        Arrays.asList(new Token[] { new Token("foo\n", TokenType.COMMENT),
+                                                    new Token("bar\n", TokenType.COMMENT)
+                        })));
+        assertEquals("Split line has the wrong offset",
+                lines.get(1).getStart(), 6);
+        assertTrue("Split line doesn't share the source",
+                lines.get(1).getSource() == source);
+    }
 }